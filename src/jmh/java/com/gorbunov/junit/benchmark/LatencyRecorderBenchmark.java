@@ -0,0 +1,59 @@
+package com.gorbunov.junit.benchmark;
+
+import com.gorbunov.junit.dto.User;
+import com.gorbunov.junit.metrics.LatencyRecorder;
+import com.gorbunov.junit.metrics.Operation;
+import com.gorbunov.junit.service.DefaultUserStore;
+import com.gorbunov.junit.service.UserService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Цена записи метрик: login с включенным LatencyRecorder против login без него и сама запись в гистограмму
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyRecorderBenchmark {
+
+    private static final int USERS_COUNT = 10_000;
+
+    private UserService plainService;
+    private UserService recordedService;
+    private LatencyRecorder recorder;
+
+    @Setup(Level.Trial)
+    public void createServices() {
+        User[] users = UserServiceBenchmark.users(0, USERS_COUNT);
+        plainService = new UserService(new StubUserDao(), new DefaultUserStore());
+        plainService.add(users);
+        recorder = new LatencyRecorder();
+        recordedService = new UserService(new StubUserDao(), new DefaultUserStore());
+        recordedService.add(users);
+        recordedService.enableLatencyRecording(recorder);
+    }
+
+    @Benchmark
+    public Optional<User> loginWithoutRecorder() {
+        return plainService.login("user42", "password42");
+    }
+
+    @Benchmark
+    public Optional<User> loginWithRecorder() {
+        return recordedService.login("user42", "password42");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<User> loginWithRecorderContended() {
+        return recordedService.login("user42", "password42");
+    }
+
+    @Benchmark
+    public void record() {
+        recorder.record(Operation.ADD, System.nanoTime(), false);
+    }
+}
@@ -0,0 +1,68 @@
+package com.gorbunov.junit.benchmark;
+
+import com.gorbunov.junit.dto.Credentials;
+import com.gorbunov.junit.dto.LoginResult;
+import com.gorbunov.junit.dto.User;
+import com.gorbunov.junit.service.ConcurrentUserStore;
+import com.gorbunov.junit.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Пакет проверок, как его присылает SSO: по одному login, loginAll и loginAll на пуле. Время - на весь пакет
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginAllBenchmark {
+
+    private static final int USERS_COUNT = 100_000;
+
+    @Param({"100", "1000"})
+    private int batchSize;
+
+    private UserService userService;
+    private List<Credentials> credentials;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void createService() {
+        userService = new UserService(new StubUserDao(), new ConcurrentUserStore());
+        userService.add(UserServiceBenchmark.users(0, USERS_COUNT));
+        // каждая десятая пара с неверным паролем
+        credentials = IntStream.range(0, batchSize)
+                .map(i -> i * 97 % USERS_COUNT)
+                .mapToObj(id -> Credentials.of("user" + id, id % 10 == 0 ? "wrong" : "password" + id))
+                .collect(Collectors.toList());
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void perCall(Blackhole blackhole) {
+        for (Credentials pair : credentials) {
+            blackhole.consume(userService.login(pair.getUsername(), pair.getPassword()));
+        }
+    }
+
+    @Benchmark
+    public List<LoginResult> loginAll() {
+        return userService.loginAll(credentials);
+    }
+
+    @Benchmark
+    public List<LoginResult> loginAllParallel() {
+        return userService.loginAll(credentials, pool);
+    }
+}
@@ -0,0 +1,58 @@
+package com.gorbunov.junit.benchmark;
+
+import com.gorbunov.junit.dto.User;
+import com.gorbunov.junit.service.LoginCacheSettings;
+import com.gorbunov.junit.service.UserService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Повторяющиеся пары логин/пароль с кэшем и без: кэш окупается, только если поиск в хранилище дороже SHA-256 ключа
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoginCacheBenchmark {
+
+    @Param({"100000"})
+    private int usersCount;
+
+    @Param({"default", "compact"})
+    private String store;
+
+    private UserService plainService;
+    private UserService cachedService;
+
+    @Setup(Level.Trial)
+    public void createServices() {
+        User[] users = UserServiceBenchmark.users(0, usersCount);
+        plainService = new UserService(new StubUserDao(), UserServiceBenchmark.createStore(store));
+        plainService.add(users);
+        cachedService = new UserService(new StubUserDao(), UserServiceBenchmark.createStore(store));
+        cachedService.add(users);
+        cachedService.enableLoginCache(LoginCacheSettings.builder().build());
+    }
+
+    @Benchmark
+    public Optional<User> loginHit() {
+        return plainService.login("user42", "password42");
+    }
+
+    @Benchmark
+    public Optional<User> loginHitCached() {
+        return cachedService.login("user42", "password42");
+    }
+
+    @Benchmark
+    public Optional<User> loginMiss() {
+        return plainService.login("user42", "wrong password");
+    }
+
+    @Benchmark
+    public Optional<User> loginMissCached() {
+        return cachedService.login("user42", "wrong password");
+    }
+}
@@ -0,0 +1,61 @@
+package com.gorbunov.junit.benchmark;
+
+import com.gorbunov.junit.dto.User;
+import com.gorbunov.junit.service.ShardedUserService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность шардированного сервиса. Масштабирование по ядрам смотрится запуском с разным числом потоков:
+ * gradle jmh -PjmhArgs="ShardedUserServiceBenchmark -t 1" и затем -t 2, -t 4 ... до числа ядер.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ShardedUserServiceBenchmark {
+
+    @Param({"1000000"})
+    private int usersCount;
+
+    @Param({"1", "4", "16"})
+    private int shards;
+
+    private ShardedUserService userService;
+    private User[] batch;
+
+    @Setup(Level.Trial)
+    public void fillUsers() {
+        userService = new ShardedUserService(new StubUserDao(), shards);
+        userService.add(UserServiceBenchmark.users(0, usersCount));
+        // пакет с существующими id: add заменяет пользователей, и сервис не растет между итерациями
+        batch = UserServiceBenchmark.users(0, 10_000);
+    }
+
+    @Benchmark
+    public Optional<User> login() {
+        int id = ThreadLocalRandom.current().nextInt(usersCount);
+        return userService.login("user" + id, "password" + id);
+    }
+
+    @Benchmark
+    public Optional<User> findById() {
+        return userService.findById(ThreadLocalRandom.current().nextInt(usersCount));
+    }
+
+    @Benchmark
+    public List<User> getAll() {
+        return userService.getAll();
+    }
+
+    @Benchmark
+    public void addBatch() {
+        userService.add(batch);
+    }
+}
@@ -0,0 +1,12 @@
+package com.gorbunov.junit.benchmark;
+
+import com.gorbunov.junit.dao.UserDao;
+
+// DAO без базы данных, чтобы в бенчмарках мерить только накладные расходы сервиса
+public class StubUserDao extends UserDao {
+
+    @Override
+    public boolean delete(Integer userId) {
+        return userId >= 0;
+    }
+}
@@ -0,0 +1,113 @@
+package com.gorbunov.junit.benchmark;
+
+import com.gorbunov.junit.dto.User;
+import com.gorbunov.junit.service.CompactUserStore;
+import com.gorbunov.junit.service.ConcurrentUserStore;
+import com.gorbunov.junit.service.DefaultUserStore;
+import com.gorbunov.junit.service.UserService;
+import com.gorbunov.junit.service.UserStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class UserServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int usersCount;
+
+    @Param({"default", "concurrent", "compact"})
+    private String store;
+
+    private UserService userService;
+    private String existingUsername;
+    private String existingPassword;
+    private int nextId;
+
+    @Setup(Level.Trial)
+    public void fillUsers() {
+        userService = new UserService(new StubUserDao(), createStore(store));
+        userService.add(users(0, usersCount));
+        existingUsername = "user" + (usersCount / 2);
+        existingPassword = "password" + (usersCount / 2);
+    }
+
+    // Пользователи для add получают новые id, поэтому после каждой итерации сервис пересоздается, чтобы он не рос бесконечно
+    @Setup(Level.Iteration)
+    public void resetAddedUsers() {
+        if (nextId > usersCount) {
+            fillUsers();
+        }
+        nextId = usersCount;
+    }
+
+    @Benchmark
+    public Optional<User> loginHit() {
+        return userService.login(existingUsername, existingPassword);
+    }
+
+    @Benchmark
+    public Optional<User> loginMiss() {
+        return userService.login(existingUsername, "wrong password");
+    }
+
+    @Benchmark
+    public void add() {
+        int id = nextId++;
+        userService.add(User.of(id, "user" + id, "password" + id));
+    }
+
+    @Benchmark
+    public List<User> getAll() {
+        return userService.getAll();
+    }
+
+    @Benchmark
+    public Map<Integer, User> getAllConvertedById() {
+        return userService.getAllConvertedById();
+    }
+
+    @Benchmark
+    public List<User> findByUsernamePrefix() {
+        return userService.findByUsernamePrefix(existingUsername, 10);
+    }
+
+    @Benchmark
+    public List<User> listUsers() {
+        return userService.listUsers(existingUsername, 50);
+    }
+
+    @Benchmark
+    public boolean delete() {
+        return userService.delete(usersCount / 2);
+    }
+
+    static UserStore createStore(String store) {
+        switch (store) {
+            case "default":
+                return new DefaultUserStore();
+            case "concurrent":
+                return new ConcurrentUserStore();
+            case "compact":
+                return new CompactUserStore();
+            default:
+                throw new IllegalArgumentException("Unknown store: " + store);
+        }
+    }
+
+    static User[] users(int fromId, int toId) {
+        User[] users = new User[toId - fromId];
+        for (int id = fromId; id < toId; id++) {
+            users[id - fromId] = User.of(id, "user" + id, "password" + id);
+        }
+        return users;
+    }
+}
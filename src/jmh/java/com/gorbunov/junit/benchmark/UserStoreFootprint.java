@@ -0,0 +1,47 @@
+package com.gorbunov.junit.benchmark;
+
+import com.gorbunov.junit.dto.User;
+import com.gorbunov.junit.service.CompactUserStore;
+import com.gorbunov.junit.service.ConcurrentUserStore;
+import com.gorbunov.junit.service.DefaultUserStore;
+import com.gorbunov.junit.service.UserStore;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Замер занимаемой хранилищами памяти. JMH меряет время, а не размер, поэтому это обычный main.
+ * Запуск: gradle jmhFootprint [-PusersCount=1000000]
+ */
+public class UserStoreFootprint {
+
+    public static void main(String[] args) {
+        int usersCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Map<String, Supplier<UserStore>> stores = Map.of(
+                "default", DefaultUserStore::new,
+                "concurrent", ConcurrentUserStore::new,
+                "compact", CompactUserStore::new
+        );
+
+        System.out.printf("%-12s %12s %16s %14s%n", "store", "users", "retained bytes", "bytes/user");
+        for (String name : new String[]{"default", "concurrent", "compact"}) {
+            long before = usedHeapAfterGc();
+            UserStore store = stores.get(name).get();
+            for (int id = 0; id < usersCount; id++) {
+                store.add(User.of(id, "user" + id, "password" + id));
+            }
+            long retained = usedHeapAfterGc() - before;
+            System.out.printf("%-12s %12d %16d %14.1f%n", name, store.getAll().size(), retained, (double) retained / usersCount);
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,269 @@
+package com.gorbunov.junit.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограниченный пул JDBC соединений. Пул не открывает соединений до первого {@link #getConnection()},
+ * после чего сразу заполняется до {@code minSize}. {@link Connection#close()} у выданного соединения
+ * возвращает его в пул.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(ConnectionPool.class.getName());
+
+    private final ConnectionPoolSettings settings;
+    private final Semaphore permits;
+    // LIFO: чаще всего выдается самое "теплое" соединение, а редко используемые успевают устареть и отсеяться проверкой
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean warmedUp = new AtomicBoolean();
+    private final ScheduledExecutorService leakDetector;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+
+    private volatile boolean closed;
+
+    public ConnectionPool(ConnectionPoolSettings settings) {
+        if (settings.getMinSize() < 0 || settings.getMaxSize() < 1 || settings.getMinSize() > settings.getMaxSize()) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + settings.getMinSize() + ", max=" + settings.getMaxSize());
+        }
+        this.settings = settings;
+        this.permits = new Semaphore(settings.getMaxSize(), true);
+        this.leakDetector = settings.getLeakDetectionThreshold().isZero() ? null : startLeakDetector(settings.getLeakDetectionThreshold());
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        warmUp();
+        acquirePermit();
+        try {
+            PooledConnection connection = pollValidIdle();
+            if (connection != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                connection = new PooledConnection(openPhysical());
+            }
+            connection.borrow(leakDetector != null);
+            borrowed.add(connection);
+            return connection.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getMaxSize() {
+        return settings.getMaxSize();
+    }
+
+    public PoolStats getStats() {
+        return new PoolStats(
+                hits.sum(),
+                misses.sum(),
+                waits.sum(),
+                Duration.ofNanos(waitNanos.sum()),
+                timeouts.sum(),
+                leaks.sum(),
+                idle.size(),
+                borrowed.size()
+        );
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (leakDetector != null) {
+            leakDetector.shutdownNow();
+        }
+        PooledConnection connection;
+        while ((connection = idle.poll()) != null) {
+            closeQuietly(connection.physical);
+        }
+    }
+
+    private void acquirePermit() throws SQLException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        waits.increment();
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(settings.getAcquireTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+        if (!acquired) {
+            timeouts.increment();
+            throw new SQLTimeoutException("No connection available within " + settings.getAcquireTimeout());
+        }
+    }
+
+    private PooledConnection pollValidIdle() {
+        PooledConnection connection;
+        while ((connection = idle.poll()) != null) {
+            if (isValid(connection)) {
+                return connection;
+            }
+            closeQuietly(connection.physical);
+        }
+        return null;
+    }
+
+    private boolean isValid(PooledConnection connection) {
+        long idleNanos = System.nanoTime() - connection.returnedAt;
+        if (idleNanos < settings.getIdleValidationInterval().toNanos()) {
+            return true;
+        }
+        try {
+            return connection.physical.isValid((int) Math.max(1, settings.getValidationTimeout().toSeconds()));
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void warmUp() throws SQLException {
+        if (warmedUp.get() || !warmedUp.compareAndSet(false, true)) {
+            return;
+        }
+        for (int i = 0; i < settings.getMinSize(); i++) {
+            PooledConnection connection = new PooledConnection(openPhysical());
+            connection.returnedAt = System.nanoTime();
+            idle.push(connection);
+        }
+    }
+
+    private Connection openPhysical() throws SQLException {
+        return DriverManager.getConnection(settings.getUrl(), settings.getUsername(), settings.getPassword());
+    }
+
+    private void release(PooledConnection connection) {
+        if (!borrowed.remove(connection)) {
+            return;
+        }
+        try {
+            if (closed || connection.physical.isClosed()) {
+                closeQuietly(connection.physical);
+                return;
+            }
+            if (!connection.physical.getAutoCommit()) {
+                connection.physical.rollback();
+                connection.physical.setAutoCommit(true);
+            }
+            connection.returnedAt = System.nanoTime();
+            idle.push(connection);
+        } catch (SQLException e) {
+            closeQuietly(connection.physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private ScheduledExecutorService startLeakDetector(Duration threshold) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-leak-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMillis = Math.max(1, threshold.toMillis() / 2);
+        executor.scheduleAtFixedRate(() -> detectLeaks(threshold.toNanos()), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return executor;
+    }
+
+    private void detectLeaks(long thresholdNanos) {
+        long now = System.nanoTime();
+        for (PooledConnection connection : borrowed) {
+            if (!connection.leakReported && now - connection.borrowedAt > thresholdNanos) {
+                connection.leakReported = true;
+                leaks.increment();
+                LOG.log(System.Logger.Level.WARNING, "Connection was not returned to the pool within "
+                        + Duration.ofNanos(thresholdNanos) + ", possible leak", connection.borrowTrace);
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private final class PooledConnection implements InvocationHandler {
+
+        private final Connection physical;
+        private final Connection proxy;
+        private volatile Connection current;
+        private volatile long borrowedAt;
+        private volatile long returnedAt;
+        private volatile Throwable borrowTrace;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+        }
+
+        private void borrow(boolean captureTrace) {
+            current = physical;
+            borrowedAt = System.nanoTime();
+            borrowTrace = captureTrace ? new Throwable("Connection borrowed here") : null;
+            leakReported = false;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (current != null) {
+                        current = null;
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return current == null || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    Connection connection = current;
+                    if (connection == null) {
+                        throw new SQLException("Connection is closed");
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
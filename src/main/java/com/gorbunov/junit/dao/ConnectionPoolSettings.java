@@ -0,0 +1,28 @@
+package com.gorbunov.junit.dao;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+@Value
+@Builder
+public class ConnectionPoolSettings {
+    String url;
+    String username;
+    String password;
+    @Builder.Default
+    int minSize = 1;
+    @Builder.Default
+    int maxSize = 10;
+    @Builder.Default
+    Duration acquireTimeout = Duration.ofSeconds(30);
+    // Соединение, пролежавшее в пуле дольше этого времени, перед выдачей проверяется через Connection.isValid
+    @Builder.Default
+    Duration idleValidationInterval = Duration.ofSeconds(30);
+    @Builder.Default
+    Duration validationTimeout = Duration.ofSeconds(5);
+    // Duration.ZERO отключает поиск утечек
+    @Builder.Default
+    Duration leakDetectionThreshold = Duration.ZERO;
+}
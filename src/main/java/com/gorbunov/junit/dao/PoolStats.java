@@ -0,0 +1,20 @@
+package com.gorbunov.junit.dao;
+
+import lombok.Value;
+
+import java.time.Duration;
+
+@Value
+public class PoolStats {
+    // соединение выдано из пула без открытия нового
+    long hits;
+    // пришлось открыть новое физическое соединение
+    long misses;
+    // запрос ждал свободного места в пуле
+    long waits;
+    Duration totalWaitTime;
+    long timeouts;
+    long leaks;
+    int idle;
+    int active;
+}
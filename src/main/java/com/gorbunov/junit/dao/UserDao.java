@@ -1,16 +1,107 @@
 package com.gorbunov.junit.dao;
 
+import com.gorbunov.junit.util.BoundedAsyncExecutor;
+import com.gorbunov.junit.util.BoundedAsyncExecutorSettings;
 import lombok.SneakyThrows;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
-public class UserDao {
+public class UserDao implements AutoCloseable {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final String DELETE_SQL = "DELETE FROM users WHERE id = ?";
+
+    private final ConnectionPool connectionPool;
+    private final BoundedAsyncExecutor asyncExecutor;
+
+    public UserDao() {
+        this(new ConnectionPool(ConnectionPoolSettings.builder()
+                .url("url")
+                .username("username")
+                .password("password")
+                .build()));
+    }
+
+    public UserDao(ConnectionPool connectionPool) {
+        // больше потоков, чем соединений в пуле, все равно ждали бы соединения
+        this(connectionPool, new BoundedAsyncExecutor(BoundedAsyncExecutorSettings.builder()
+                .maxPlatformThreads(connectionPool.getMaxSize())
+                .build()));
+    }
+
+    public UserDao(ConnectionPool connectionPool, BoundedAsyncExecutor asyncExecutor) {
+        this.connectionPool = connectionPool;
+        this.asyncExecutor = asyncExecutor;
+    }
 
     @SneakyThrows
     public boolean delete(Integer userId){
-        try (Connection connection = DriverManager.getConnection("url", "username", "password")) {
-            return true;
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
+            statement.setInt(1, userId);
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(Integer userId) {
+        return asyncExecutor.submit(() -> delete(userId));
+    }
+
+    public Map<Integer, Boolean> deleteAll(Collection<Integer> userIds) {
+        return deleteAll(userIds, DEFAULT_BATCH_SIZE);
+    }
+
+    // Удаляет пользователей пачками по batchSize в одной транзакции. Результат - id -> был ли удален, в порядке userIds.
+    @SneakyThrows
+    public Map<Integer, Boolean> deleteAll(Collection<Integer> userIds, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(userIds));
+        Map<Integer, Boolean> results = new LinkedHashMap<>();
+        if (ids.isEmpty()) {
+            return results;
+        }
+        try (Connection connection = connectionPool.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
+                for (int from = 0; from < ids.size(); from += batchSize) {
+                    List<Integer> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+                    for (Integer id : chunk) {
+                        statement.setInt(1, id);
+                        statement.addBatch();
+                    }
+                    int[] updateCounts = statement.executeBatch();
+                    for (int i = 0; i < chunk.size(); i++) {
+                        results.put(chunk.get(i), updateCounts[i] > 0 || updateCounts[i] == Statement.SUCCESS_NO_INFO);
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    public PoolStats getPoolStats() {
+        return connectionPool.getStats();
+    }
+
+    // Останавливает асинхронные задачи и закрывает пул соединений
+    @Override
+    public void close() {
+        try {
+            asyncExecutor.close();
+        } finally {
+            connectionPool.close();
         }
     }
 }
@@ -0,0 +1,12 @@
+package com.gorbunov.junit.dto;
+
+import lombok.ToString;
+import lombok.Value;
+
+@Value(staticConstructor = "of")
+public class Credentials {
+    String username;
+    // не попадает в toString, чтобы пароли не оказывались в логах
+    @ToString.Exclude
+    String password;
+}
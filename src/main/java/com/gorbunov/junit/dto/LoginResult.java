@@ -0,0 +1,36 @@
+package com.gorbunov.junit.dto;
+
+import lombok.Value;
+
+import java.util.Optional;
+
+/**
+ * Результат одной проверки из пакетного login: найденный пользователь (или его отсутствие) либо ошибка,
+ * которую одиночный login бросил бы как исключение.
+ */
+@Value
+public class LoginResult {
+    Optional<User> user;
+    // null, если проверка прошла без ошибки
+    IllegalArgumentException error;
+
+    public static LoginResult of(Optional<User> user) {
+        return new LoginResult(user, null);
+    }
+
+    public static LoginResult failed(IllegalArgumentException error) {
+        return new LoginResult(Optional.empty(), error);
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    // То же, что вернул бы одиночный login: пользователь или исключение
+    public Optional<User> orElseThrow() {
+        if (error != null) {
+            throw error;
+        }
+        return user;
+    }
+}
@@ -0,0 +1,79 @@
+package com.gorbunov.junit.metrics;
+
+import com.gorbunov.junit.dao.PoolStats;
+import com.gorbunov.junit.dao.UserDao;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Как UserDaoSpy: содержит настоящий DAO и делегирует ему вызовы, замеряя их время
+class InstrumentedUserDao extends UserDao {
+
+    private final UserDao userDao;
+    private final LatencyRecorder recorder;
+
+    InstrumentedUserDao(UserDao userDao, LatencyRecorder recorder) {
+        // собственные пул и executor не нужны, всю работу делает userDao
+        super(null, null);
+        this.userDao = userDao;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public boolean delete(Integer userId) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean result = userDao.delete(userId);
+            failed = false;
+            return result;
+        } finally {
+            recorder.record(Operation.DAO_DELETE, start, failed);
+        }
+    }
+
+    @Override
+    public Map<Integer, Boolean> deleteAll(Collection<Integer> userIds) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Map<Integer, Boolean> result = userDao.deleteAll(userIds);
+            failed = false;
+            return result;
+        } finally {
+            recorder.record(Operation.DAO_DELETE_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public Map<Integer, Boolean> deleteAll(Collection<Integer> userIds, int batchSize) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Map<Integer, Boolean> result = userDao.deleteAll(userIds, batchSize);
+            failed = false;
+            return result;
+        } finally {
+            recorder.record(Operation.DAO_DELETE_ALL, start, failed);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAsync(Integer userId) {
+        long start = System.nanoTime();
+        return userDao.deleteAsync(userId)
+                .whenComplete((result, error) -> recorder.record(Operation.DAO_DELETE, start, error != null));
+    }
+
+    @Override
+    public PoolStats getPoolStats() {
+        return userDao.getPoolStats();
+    }
+
+    // Своих пула и executor нет, закрывать нужно ресурсы обернутого DAO
+    @Override
+    public void close() {
+        userDao.close();
+    }
+}
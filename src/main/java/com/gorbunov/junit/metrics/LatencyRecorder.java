@@ -0,0 +1,71 @@
+package com.gorbunov.junit.metrics;
+
+import com.gorbunov.junit.dao.UserDao;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики вызовов, ошибок и гистограммы задержек по каждой {@link Operation}.
+ * Подключается к {@code UserService} через {@code enableLatencyRecording}, а DAO оборачивается через {@link #wrap(UserDao)}.
+ */
+public class LatencyRecorder {
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder[] calls = new LongAdder[OPERATIONS.length];
+    private final LongAdder[] errors = new LongAdder[OPERATIONS.length];
+
+    public LatencyRecorder() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            histograms[i] = new LatencyHistogram();
+            calls[i] = new LongAdder();
+            errors[i] = new LongAdder();
+        }
+    }
+
+    public UserDao wrap(UserDao userDao) {
+        return new InstrumentedUserDao(userDao, this);
+    }
+
+    /**
+     * @param startNanos значение {@link System#nanoTime()} в начале операции
+     */
+    public void record(Operation operation, long startNanos, boolean failed) {
+        int index = operation.ordinal();
+        histograms[index].record(System.nanoTime() - startNanos);
+        calls[index].increment();
+        if (failed) {
+            errors[index].increment();
+        }
+    }
+
+    public Map<Operation, OperationStats> snapshot() {
+        return snapshot(false);
+    }
+
+    public Map<Operation, OperationStats> snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    private Map<Operation, OperationStats> snapshot(boolean reset) {
+        Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        for (Operation operation : OPERATIONS) {
+            int index = operation.ordinal();
+            LatencyHistogram.Snapshot histogram = histograms[index].snapshot(reset);
+            stats.put(operation, new OperationStats(
+                    reset ? calls[index].sumThenReset() : calls[index].sum(),
+                    reset ? errors[index].sumThenReset() : errors[index].sum(),
+                    Duration.ofNanos(histogram.getValueAtQuantile(0.5)),
+                    Duration.ofNanos(histogram.getValueAtQuantile(0.99)),
+                    Duration.ofNanos(histogram.getValueAtQuantile(0.999)),
+                    Duration.ofNanos(histogram.getMax())
+            ));
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+}
@@ -0,0 +1,10 @@
+package com.gorbunov.junit.metrics;
+
+public enum Operation {
+    LOGIN,
+    ADD,
+    GET_ALL_CONVERTED_BY_ID,
+    DELETE,
+    DAO_DELETE,
+    DAO_DELETE_ALL
+}
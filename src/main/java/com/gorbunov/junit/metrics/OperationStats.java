@@ -0,0 +1,15 @@
+package com.gorbunov.junit.metrics;
+
+import lombok.Value;
+
+import java.time.Duration;
+
+@Value
+public class OperationStats {
+    long calls;
+    long errors;
+    Duration p50;
+    Duration p99;
+    Duration p999;
+    Duration max;
+}
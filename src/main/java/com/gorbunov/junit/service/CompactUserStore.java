@@ -0,0 +1,485 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Компактное хранилище для миллионов пользователей. Вместо объектов {@link User} хранит колонки:
+ * id в {@code int[]}, а username и password - в виде UTF-8 байт в двух общих массивах-аренах.
+ * Индексы по id и username - хэш-таблицы с открытой адресацией из номеров строк.
+ * Для поиска по префиксу и постраничного вывода номера строк дополнительно хранятся отсортированными по username,
+ * сравнение идет прямо по байтам арены.
+ * Объекты {@link User} создаются только при чтении. Не потокобезопасно.
+ * <p>
+ * При замене пользователя по {@link DuplicateIdPolicy#REPLACE} новые строки дописываются в арену,
+ * старые байты остаются в ней до пересоздания хранилища.
+ * <p>
+ * {@link #getAll()} - представление поверх колонок, а не неизменяемая версия: копия списка стоила бы столько же памяти,
+ * сколько экономят колонки. Изменилось ли оно, можно узнать по {@link #version()}.
+ */
+public class CompactUserStore implements UserStore {
+
+    private static final int EMPTY = -1;
+    private static final int MIN_PENDING_ROWS = 1024;
+
+    private final DuplicateIdPolicy duplicateIdPolicy;
+    private final Arena usernames = new Arena();
+    private final Arena passwords = new Arena();
+    private final List<User> usersView = new UsersView();
+    private final Map<Integer, User> usersByIdView = new UsersByIdView();
+
+    private int size;
+    private long version;
+    private int[] ids;
+    private int[] usernameOffsets;
+    private int[] passwordOffsets;
+    private int[] usernameHashes;
+    // В таблицах лежат номера строк, EMPTY - свободная ячейка
+    private int[] idTable;
+    private int[] usernameTable;
+    // Номера строк по username, при равных username - по номеру строки. Вставка в середину массива стоила бы O(n),
+    // поэтому новые строки копятся в pendingRows, сортируются при чтении и сливаются с sortedRows,
+    // когда их становится больше восьмой части sortedRows: в среднем O(log n) на add
+    private int[] sortedRows = new int[16];
+    private int sortedSize;
+    private int[] pendingRows = new int[16];
+    private int pendingSize;
+    private boolean pendingSorted = true;
+
+    public CompactUserStore() {
+        this(DuplicateIdPolicy.REPLACE);
+    }
+
+    public CompactUserStore(DuplicateIdPolicy duplicateIdPolicy) {
+        this(duplicateIdPolicy, 16);
+    }
+
+    public CompactUserStore(DuplicateIdPolicy duplicateIdPolicy, int expectedSize) {
+        this.duplicateIdPolicy = duplicateIdPolicy;
+        int capacity = Math.max(16, expectedSize);
+        ids = new int[capacity];
+        usernameOffsets = new int[capacity];
+        passwordOffsets = new int[capacity];
+        usernameHashes = new int[capacity];
+        idTable = emptyTable(capacity);
+        usernameTable = emptyTable(capacity);
+    }
+
+    @Override
+    public void add(User user) {
+        if (user.getId() == null) {
+            throw new IllegalArgumentException("User id is null");
+        }
+        int id = user.getId();
+        byte[] username = user.getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] password = user.getPassword().getBytes(StandardCharsets.UTF_8);
+
+        int idSlot = findIdSlot(id);
+        int row = idTable[idSlot];
+        if (row != EMPTY) {
+            if (duplicateIdPolicy == DuplicateIdPolicy.REJECT) {
+                throw new IllegalStateException("Duplicate user id: " + id);
+            }
+            removeFromUsernameTable(row);
+            removeFromSortedRows(row);
+        } else {
+            ensureCapacity(size + 1);
+            row = size++;
+            ids[row] = id;
+            // после ensureCapacity таблица могла перестроиться, поэтому ячейку ищем заново
+            idTable[findIdSlot(id)] = row;
+        }
+        usernameOffsets[row] = usernames.append(username);
+        passwordOffsets[row] = passwords.append(password);
+        usernameHashes[row] = Arrays.hashCode(username);
+        insertIntoUsernameTable(row);
+        addToSortedRows(row);
+        version++;
+    }
+
+    @Override
+    public List<User> getAll() {
+        return usersView;
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public Optional<User> findByUsernameAndPassword(String username, String password) {
+        byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        int hash = Arrays.hashCode(usernameBytes);
+        int mask = usernameTable.length - 1;
+        int found = EMPTY;
+        for (int slot = mix(hash) & mask; usernameTable[slot] != EMPTY; slot = (slot + 1) & mask) {
+            int row = usernameTable[slot];
+            // при нескольких совпадениях побеждает пользователь, добавленный первым, как и в DefaultUserStore
+            if (usernameHashes[row] == hash
+                    && (found == EMPTY || row < found)
+                    && usernames.contentEquals(usernameOffsets[row], usernameBytes)
+                    && passwords.contentEquals(passwordOffsets[row], passwordBytes)) {
+                found = row;
+            }
+        }
+        return found == EMPTY ? Optional.empty() : Optional.of(materialize(found));
+    }
+
+    @Override
+    public Optional<User> findById(int id) {
+        int row = idTable[findIdSlot(id)];
+        return row == EMPTY ? Optional.empty() : Optional.of(materialize(row));
+    }
+
+    @Override
+    public List<User> findByUsernamePrefix(String prefix, int limit) {
+        return UsernameIndex.findByPrefix(usersFrom(prefix, true), prefix, limit);
+    }
+
+    @Override
+    public List<User> listUsers(String afterUsername, int pageSize) {
+        return UsernameIndex.page(usersFrom(afterUsername, false), pageSize);
+    }
+
+    @Override
+    public Map<Integer, User> getAllConvertedById() {
+        return usersByIdView;
+    }
+
+    // Слияние sortedRows и pendingRows начиная с первой строки, чей username не меньше (inclusive) или больше username
+    private Iterator<User> usersFrom(String username, boolean inclusive) {
+        sortPendingRows();
+        byte[] key = username == null ? null : username.getBytes(StandardCharsets.UTF_8);
+        int[] sorted = sortedRows;
+        int[] pending = pendingRows;
+        int sortedEnd = sortedSize;
+        int pendingEnd = pendingSize;
+        int sortedStart = key == null ? 0 : lowerBound(sorted, sortedEnd, key, inclusive);
+        int pendingStart = key == null ? 0 : lowerBound(pending, pendingEnd, key, inclusive);
+        return new Iterator<>() {
+            private int i = sortedStart;
+            private int j = pendingStart;
+
+            @Override
+            public boolean hasNext() {
+                return i < sortedEnd || j < pendingEnd;
+            }
+
+            @Override
+            public User next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                boolean fromSorted = j == pendingEnd || (i < sortedEnd && compareRows(sorted[i], pending[j]) < 0);
+                return materialize(fromSorted ? sorted[i++] : pending[j++]);
+            }
+        };
+    }
+
+    private int lowerBound(int[] rows, int length, byte[] key, boolean inclusive) {
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int cmp = usernames.compare(usernameOffsets[rows[middle]], key);
+            if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compareRows(int left, int right) {
+        int cmp = usernames.compare(usernameOffsets[left], usernameOffsets[right]);
+        return cmp != 0 ? cmp : Integer.compare(left, right);
+    }
+
+    private void addToSortedRows(int row) {
+        if (pendingSize == pendingRows.length) {
+            pendingRows = Arrays.copyOf(pendingRows, pendingSize * 2);
+        }
+        pendingRows[pendingSize++] = row;
+        pendingSorted = pendingSize == 1 || (pendingSorted && compareRows(pendingRows[pendingSize - 2], row) < 0);
+        if (pendingSize > Math.max(MIN_PENDING_ROWS, sortedSize >>> 3)) {
+            mergePendingRows();
+        }
+    }
+
+    // Вызывается до того, как у строки сменится username: позиция в sortedRows ищется по старому
+    private void removeFromSortedRows(int row) {
+        int low = 0;
+        int high = sortedSize - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = compareRows(sortedRows[middle], row);
+            if (cmp == 0) {
+                System.arraycopy(sortedRows, middle + 1, sortedRows, middle, --sortedSize - middle);
+                return;
+            }
+            if (cmp < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        for (int i = 0; i < pendingSize; i++) {
+            if (pendingRows[i] == row) {
+                System.arraycopy(pendingRows, i + 1, pendingRows, i, --pendingSize - i);
+                return;
+            }
+        }
+    }
+
+    private void sortPendingRows() {
+        if (!pendingSorted) {
+            sortRows(pendingRows, new int[pendingSize], 0, pendingSize);
+            pendingSorted = true;
+        }
+    }
+
+    // Слияние с конца, чтобы не выделять второй массив под sortedRows
+    private void mergePendingRows() {
+        sortPendingRows();
+        int total = sortedSize + pendingSize;
+        if (total > sortedRows.length) {
+            sortedRows = Arrays.copyOf(sortedRows, Math.max(total, sortedRows.length + (sortedRows.length >> 1)));
+        }
+        int i = sortedSize - 1;
+        int j = pendingSize - 1;
+        for (int k = total - 1; j >= 0; k--) {
+            sortedRows[k] = i >= 0 && compareRows(sortedRows[i], pendingRows[j]) > 0 ? sortedRows[i--] : pendingRows[j--];
+        }
+        sortedSize = total;
+        pendingSize = 0;
+    }
+
+    // Сортировка слиянием: в JDK нет сортировки int[] со своим компаратором
+    private void sortRows(int[] rows, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sortRows(rows, buffer, from, middle);
+        sortRows(rows, buffer, middle, to);
+        if (compareRows(rows[middle - 1], rows[middle]) < 0) {
+            return;
+        }
+        System.arraycopy(rows, from, buffer, from, to - from);
+        for (int i = from, j = middle, k = from; k < to; k++) {
+            rows[k] = j == to || (i < middle && compareRows(buffer[i], buffer[j]) < 0) ? buffer[i++] : buffer[j++];
+        }
+    }
+
+    private User materialize(int row) {
+        return User.of(ids[row], usernames.read(usernameOffsets[row]), passwords.read(passwordOffsets[row]));
+    }
+
+    private int findIdSlot(int id) {
+        int mask = idTable.length - 1;
+        int slot = mix(id) & mask;
+        while (idTable[slot] != EMPTY && ids[idTable[slot]] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insertIntoUsernameTable(int row) {
+        int mask = usernameTable.length - 1;
+        int slot = mix(usernameHashes[row]) & mask;
+        while (usernameTable[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        usernameTable[slot] = row;
+    }
+
+    private void removeFromUsernameTable(int row) {
+        int mask = usernameTable.length - 1;
+        int slot = mix(usernameHashes[row]) & mask;
+        while (usernameTable[slot] != row) {
+            slot = (slot + 1) & mask;
+        }
+        usernameTable[slot] = EMPTY;
+        // обратный сдвиг, чтобы не разорвать цепочки пробирования
+        int free = slot;
+        for (int next = (slot + 1) & mask; usernameTable[next] != EMPTY; next = (next + 1) & mask) {
+            int home = mix(usernameHashes[usernameTable[next]]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                usernameTable[free] = usernameTable[next];
+                usernameTable[next] = EMPTY;
+                free = next;
+            }
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > ids.length) {
+            int capacity = Math.max(required, ids.length + (ids.length >> 1));
+            ids = Arrays.copyOf(ids, capacity);
+            usernameOffsets = Arrays.copyOf(usernameOffsets, capacity);
+            passwordOffsets = Arrays.copyOf(passwordOffsets, capacity);
+            usernameHashes = Arrays.copyOf(usernameHashes, capacity);
+        }
+        if (required * 2 > idTable.length) {
+            idTable = emptyTable(required);
+            usernameTable = emptyTable(required);
+            for (int row = 0; row < size; row++) {
+                idTable[findIdSlot(ids[row])] = row;
+                insertIntoUsernameTable(row);
+            }
+        }
+    }
+
+    // Размер таблицы - степень двойки, заполненность не больше половины
+    private static int[] emptyTable(int capacity) {
+        int[] table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Строки хранятся подряд в виде [длина varint][UTF-8 байты]
+    private static final class Arena {
+
+        private byte[] bytes = new byte[1024];
+        private int length;
+
+        int append(byte[] value) {
+            ensure(length + 5 + value.length);
+            int offset = length;
+            int remaining = value.length;
+            while ((remaining & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((remaining & 0x7F) | 0x80);
+                remaining >>>= 7;
+            }
+            bytes[length++] = (byte) remaining;
+            System.arraycopy(value, 0, bytes, length, value.length);
+            length += value.length;
+            return offset;
+        }
+
+        String read(int offset) {
+            return new String(bytes, start(offset), length(offset), StandardCharsets.UTF_8);
+        }
+
+        boolean contentEquals(int offset, byte[] value) {
+            int position = start(offset);
+            return length(offset) == value.length
+                    && Arrays.equals(bytes, position, position + value.length, value, 0, value.length);
+        }
+
+        // Порядок как у String.compareTo для тех же строк
+        int compare(int offset, int otherOffset) {
+            return compare(bytes, start(offset), length(offset), bytes, start(otherOffset), length(otherOffset));
+        }
+
+        int compare(int offset, byte[] value) {
+            return compare(bytes, start(offset), length(offset), value, 0, value.length);
+        }
+
+        private static int compare(byte[] left, int leftFrom, int leftLength, byte[] right, int rightFrom, int rightLength) {
+            int mismatch = Arrays.mismatch(left, leftFrom, leftFrom + leftLength, right, rightFrom, rightFrom + rightLength);
+            if (mismatch < 0) {
+                return 0;
+            }
+            if (mismatch == leftLength || mismatch == rightLength) {
+                return Integer.compare(leftLength, rightLength);
+            }
+            return UsernameIndex.compareUtf8(left[leftFrom + mismatch], right[rightFrom + mismatch]);
+        }
+
+        private int length(int offset) {
+            int valueLength = 0;
+            for (int position = offset, shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                valueLength |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return valueLength;
+                }
+            }
+        }
+
+        private int start(int offset) {
+            int position = offset;
+            while (bytes[position] < 0) {
+                position++;
+            }
+            return position + 1;
+        }
+
+        private void ensure(int required) {
+            if (required > bytes.length) {
+                long capacity = Math.max(required, (long) bytes.length * 2);
+                bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE - 8, capacity));
+            }
+        }
+    }
+
+    private final class UsersView extends AbstractList<User> implements RandomAccess {
+
+        @Override
+        public User get(int index) {
+            Objects.checkIndex(index, size);
+            return materialize(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private final class UsersByIdView extends AbstractMap<Integer, User> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Integer && idTable[findIdSlot((Integer) key)] != EMPTY;
+        }
+
+        @Override
+        public User get(Object key) {
+            return key instanceof Integer ? findById((Integer) key).orElse(null) : null;
+        }
+
+        @Override
+        public Set<Entry<Integer, User>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Entry<Integer, User>> iterator() {
+                    Iterator<User> users = usersView.iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return users.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Integer, User> next() {
+                            User user = users.next();
+                            return new SimpleImmutableEntry<>(user.getId(), user);
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
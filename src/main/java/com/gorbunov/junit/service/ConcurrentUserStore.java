@@ -0,0 +1,223 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+import com.gorbunov.junit.util.PersistentVector;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Потокобезопасное хранилище без глобальной блокировки: индексы построены на {@link ConcurrentHashMap}
+ * (блокировки только на уровне бакета). {@link #getAll()} за O(1) возвращает неизменяемую версию списка
+ * в порядке добавления: писатель строит новую версию, разделяющую структуру со старой, и публикует ее через
+ * compare-and-set, повторяя попытку, если другой писатель успел раньше.
+ * <p>
+ * Хранилище из {@link #withoutUsernameIndex(DuplicateIdPolicy)} не ведет индексов по username: они нужны только
+ * для login и поиска по username, а тем, кто держит такой индекс сам (как {@link ShardedUserService}), лишь
+ * удваивают память и работу add. Методы поиска по username у него бросают {@link UnsupportedOperationException}.
+ */
+public class ConcurrentUserStore implements UserStore {
+
+    private final DuplicateIdPolicy duplicateIdPolicy;
+    private final boolean indexUsernames;
+    private final ConcurrentMap<Integer, Slot> slotsById = new ConcurrentHashMap<>();
+    private final Map<Integer, User> usersByIdView = new UsersByIdView();
+    private final ConcurrentMap<String, Queue<User>> usersByUsername = new ConcurrentHashMap<>();
+    // Те же очереди по порядку username. Очередь кладется сюда внутри computeIfAbsent, до первого пользователя в ней
+    private final ConcurrentNavigableMap<String, Queue<User>> sortedUsersByUsername = new ConcurrentSkipListMap<>();
+    private final AtomicReference<State> state = new AtomicReference<>(new State(PersistentVector.empty(), 0));
+
+    public ConcurrentUserStore() {
+        this(DuplicateIdPolicy.REPLACE);
+    }
+
+    public ConcurrentUserStore(DuplicateIdPolicy duplicateIdPolicy) {
+        this(duplicateIdPolicy, true);
+    }
+
+    private ConcurrentUserStore(DuplicateIdPolicy duplicateIdPolicy, boolean indexUsernames) {
+        this.duplicateIdPolicy = duplicateIdPolicy;
+        this.indexUsernames = indexUsernames;
+    }
+
+    public static ConcurrentUserStore withoutUsernameIndex(DuplicateIdPolicy duplicateIdPolicy) {
+        return new ConcurrentUserStore(duplicateIdPolicy, false);
+    }
+
+    @Override
+    public void add(User user) {
+        if (user.getId() == null) {
+            throw new IllegalArgumentException("User id is null");
+        }
+        // compute блокирует только бакет с этим id, поэтому замена и обновление индекса по username атомарны для одного id
+        slotsById.compute(user.getId(), (id, previous) -> {
+            if (previous != null) {
+                if (duplicateIdPolicy == DuplicateIdPolicy.REJECT) {
+                    throw new IllegalStateException("Duplicate user id: " + id);
+                }
+                if (indexUsernames) {
+                    removeFromUsernameIndex(previous.user);
+                }
+            }
+            if (indexUsernames) {
+                usersByUsername.computeIfAbsent(user.getUsername(), this::newUsernameGroup).add(user);
+            }
+            return new Slot(user, publish(user, previous));
+        });
+    }
+
+    @Override
+    public List<User> getAll() {
+        return state.get().users;
+    }
+
+    @Override
+    public long version() {
+        return state.get().version;
+    }
+
+    @Override
+    public Optional<User> findByUsernameAndPassword(String username, String password) {
+        checkUsernameIndex();
+        Queue<User> candidates = usersByUsername.get(username);
+        if (candidates == null) {
+            return Optional.empty();
+        }
+        for (User user : candidates) {
+            if (user.getPassword().equals(password)) {
+                return Optional.of(user);
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public List<User> findByUsernamePrefix(String prefix, int limit) {
+        checkUsernameIndex();
+        return UsernameIndex.findByPrefix(sortedUsersByUsername, prefix, limit);
+    }
+
+    @Override
+    public List<User> listUsers(String afterUsername, int pageSize) {
+        checkUsernameIndex();
+        return UsernameIndex.page(sortedUsersByUsername, afterUsername, pageSize);
+    }
+
+    @Override
+    public Optional<User> findById(int id) {
+        Slot slot = slotsById.get(id);
+        return slot == null ? Optional.empty() : Optional.of(slot.user);
+    }
+
+    @Override
+    public Map<Integer, User> getAllConvertedById() {
+        return usersByIdView;
+    }
+
+    // Вызывается внутри compute, поэтому позицию этого id никто другой не меняет, а конкурируют только писатели
+    // других id. Возвращает позицию пользователя в users
+    private int publish(User user, Slot previous) {
+        while (true) {
+            State current = state.get();
+            int position = previous == null ? current.users.size() : previous.position;
+            PersistentVector<User> users = previous == null
+                    ? current.users.plus(user)
+                    : current.users.with(position, user);
+            if (state.compareAndSet(current, new State(users, current.version + 1))) {
+                return position;
+            }
+        }
+    }
+
+    private void checkUsernameIndex() {
+        if (!indexUsernames) {
+            throw new UnsupportedOperationException("Store is created without username index");
+        }
+    }
+
+    private Queue<User> newUsernameGroup(String username) {
+        Queue<User> group = new ConcurrentLinkedQueue<>();
+        sortedUsersByUsername.put(username, group);
+        return group;
+    }
+
+    private void removeFromUsernameIndex(User user) {
+        Queue<User> candidates = usersByUsername.get(user.getUsername());
+        if (candidates != null) {
+            candidates.remove(user);
+        }
+    }
+
+    // Список и версия меняются вместе, поэтому читатель никогда не видит одно без другого
+    private static final class State {
+        private final PersistentVector<User> users;
+        private final long version;
+
+        private State(PersistentVector<User> users, long version) {
+            this.users = users;
+            this.version = version;
+        }
+    }
+
+    // Позиция нужна, чтобы при замене пользователя обновить getAll() за O(1). Слот неизменяемый: замена кладет новый
+    private static final class Slot {
+        private final User user;
+        private final int position;
+
+        private Slot(User user, int position) {
+            this.user = user;
+            this.position = position;
+        }
+    }
+
+    private final class UsersByIdView extends AbstractMap<Integer, User> {
+
+        @Override
+        public int size() {
+            return slotsById.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return slotsById.containsKey(key);
+        }
+
+        @Override
+        public User get(Object key) {
+            Slot slot = slotsById.get(key);
+            return slot == null ? null : slot.user;
+        }
+
+        @Override
+        public Set<Entry<Integer, User>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return slotsById.size();
+                }
+
+                @Override
+                public Iterator<Entry<Integer, User>> iterator() {
+                    Iterator<Entry<Integer, Slot>> slots = slotsById.entrySet().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return slots.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Integer, User> next() {
+                            Entry<Integer, Slot> entry = slots.next();
+                            return new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().user);
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+import com.gorbunov.junit.util.IntObjectMap;
+import com.gorbunov.junit.util.PersistentVector;
+
+import java.util.*;
+
+/**
+ * Однопоточное хранилище по умолчанию. Для одновременной работы из нескольких потоков есть {@link ConcurrentUserStore}.
+ * {@link #getAll()} возвращает неизменяемую версию списка за O(1): следующий add публикует новую версию,
+ * не трогая уже выданные, поэтому их можно читать из других потоков.
+ */
+public class DefaultUserStore implements UserStore {
+
+    private final DuplicateIdPolicy duplicateIdPolicy;
+    private volatile PersistentVector<User> users = PersistentVector.empty();
+    private volatile long version;
+    // username -> пользователи с этим username в порядке добавления. Обычно список из одного элемента.
+    private final Map<String, List<User>> usersByUsername = new HashMap<>();
+    // Те же списки, что и в usersByUsername, но по порядку username: для поиска по префиксу и постраничного вывода.
+    // login остается на HashMap, чтобы не платить O(log n) на горячем пути
+    private final NavigableMap<String, List<User>> sortedUsersByUsername = new TreeMap<>();
+    private final IntObjectMap<Slot> slotsById = new IntObjectMap<>();
+    private final Map<Integer, User> usersByIdView = new UsersByIdView();
+
+    public DefaultUserStore() {
+        this(DuplicateIdPolicy.REPLACE);
+    }
+
+    public DefaultUserStore(DuplicateIdPolicy duplicateIdPolicy) {
+        this.duplicateIdPolicy = duplicateIdPolicy;
+    }
+
+    @Override
+    public void add(User user) {
+        if (user.getId() == null) {
+            throw new IllegalArgumentException("User id is null");
+        }
+        Slot slot = slotsById.get(user.getId());
+        if (slot == null) {
+            slotsById.put(user.getId(), new Slot(user, users.size()));
+            users = users.plus(user);
+        } else if (duplicateIdPolicy == DuplicateIdPolicy.REJECT) {
+            throw new IllegalStateException("Duplicate user id: " + user.getId());
+        } else {
+            removeFromUsernameIndex(slot.user);
+            slot.user = user;
+            users = users.with(slot.position, user);
+        }
+        usersByUsername.computeIfAbsent(user.getUsername(), this::newUsernameGroup).add(user);
+        version++;
+    }
+
+    @Override
+    public List<User> getAll() {
+        return users;
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public Optional<User> findByUsernameAndPassword(String username, String password) {
+        List<User> candidates = usersByUsername.get(username);
+        if (candidates == null) {
+            return Optional.empty();
+        }
+        for (User user : candidates) {
+            if (user.getPassword().equals(password)) {
+                return Optional.of(user);
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public List<User> findByUsernamePrefix(String prefix, int limit) {
+        return UsernameIndex.findByPrefix(sortedUsersByUsername, prefix, limit);
+    }
+
+    @Override
+    public List<User> listUsers(String afterUsername, int pageSize) {
+        return UsernameIndex.page(sortedUsersByUsername, afterUsername, pageSize);
+    }
+
+    @Override
+    public Optional<User> findById(int id) {
+        Slot slot = slotsById.get(id);
+        return slot == null ? Optional.empty() : Optional.of(slot.user);
+    }
+
+    @Override
+    public Map<Integer, User> getAllConvertedById() {
+        return usersByIdView;
+    }
+
+    Iterator<User> usersFrom(String username, boolean inclusive) {
+        return UsernameIndex.iterate(sortedUsersByUsername, username, inclusive);
+    }
+
+    private void removeFromUsernameIndex(User user) {
+        List<User> candidates = usersByUsername.get(user.getUsername());
+        candidates.remove(user);
+        if (candidates.isEmpty()) {
+            usersByUsername.remove(user.getUsername());
+            sortedUsersByUsername.remove(user.getUsername());
+        }
+    }
+
+    private List<User> newUsernameGroup(String username) {
+        List<User> group = new ArrayList<>(1);
+        sortedUsersByUsername.put(username, group);
+        return group;
+    }
+
+    // Позиция нужна, чтобы при замене пользователя обновить getAll() за O(1)
+    private static final class Slot {
+        private User user;
+        private final int position;
+
+        private Slot(User user, int position) {
+            this.user = user;
+            this.position = position;
+        }
+    }
+
+    private final class UsersByIdView extends AbstractMap<Integer, User> {
+
+        @Override
+        public int size() {
+            return slotsById.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Integer && slotsById.containsKey((Integer) key);
+        }
+
+        @Override
+        public User get(Object key) {
+            Slot slot = key instanceof Integer ? slotsById.get((Integer) key) : null;
+            return slot == null ? null : slot.user;
+        }
+
+        @Override
+        public Set<Entry<Integer, User>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return slotsById.size();
+                }
+
+                @Override
+                public Iterator<Entry<Integer, User>> iterator() {
+                    IntObjectMap.Cursor<Slot> cursor = slotsById.cursor();
+                    return new Iterator<>() {
+                        private boolean advanced;
+                        private boolean hasNext;
+
+                        @Override
+                        public boolean hasNext() {
+                            if (!advanced) {
+                                hasNext = cursor.advance();
+                                advanced = true;
+                            }
+                            return hasNext;
+                        }
+
+                        @Override
+                        public Entry<Integer, User> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            advanced = false;
+                            return new SimpleImmutableEntry<>(cursor.key(), cursor.value().user);
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
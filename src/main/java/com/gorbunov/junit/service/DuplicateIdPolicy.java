@@ -0,0 +1,15 @@
+package com.gorbunov.junit.service;
+
+/**
+ * Что делать, если добавляется пользователь с уже существующим id.
+ */
+public enum DuplicateIdPolicy {
+    /**
+     * Бросить {@link IllegalStateException}, хранилище не меняется.
+     */
+    REJECT,
+    /**
+     * Заменить старого пользователя новым на том же месте в {@link UserStore#getAll()}.
+     */
+    REPLACE
+}
@@ -0,0 +1,9 @@
+package com.gorbunov.junit.service;
+
+public enum ImportFormat {
+    // id,username,password; заголовок "id,username,password" в первой строке пропускается. Поля можно брать в кавычки,
+    // кавычка внутри поля удваивается. Перевод строки внутри поля не поддерживается
+    CSV,
+    // один JSON-объект {"id": 1, "username": "...", "password": "..."} на строку, прочие поля игнорируются
+    NDJSON
+}
@@ -0,0 +1,20 @@
+package com.gorbunov.junit.service;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class ImportReport {
+    long imported;
+    long skipped;
+    // первые ImportSettings.maxReportedErrors пропущенных строк
+    List<RejectedRow> rejectedRows;
+
+    @Value
+    public static class RejectedRow {
+        // номер строки в файле, с 1
+        long line;
+        String reason;
+    }
+}
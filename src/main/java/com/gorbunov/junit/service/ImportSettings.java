@@ -0,0 +1,32 @@
+package com.gorbunov.junit.service;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class ImportSettings {
+    @Builder.Default
+    ImportFormat format = ImportFormat.CSV;
+    // размер буфера, которым читается файл
+    @Builder.Default
+    int chunkSize = 64 * 1024;
+    // столько пользователей передается в один вызов UserService.add
+    @Builder.Default
+    int batchSize = 1_000;
+    // более длинная строка пропускается как ошибочная, чтобы одна битая строка не заняла всю память
+    @Builder.Default
+    int maxLineLength = 64 * 1024;
+    // в отчет попадают только первые ошибки, остальные учитываются в счетчике skipped
+    @Builder.Default
+    int maxReportedErrors = 100;
+    @Builder.Default
+    Listener listener = (bytesRead, totalBytes, imported, skipped) -> {
+    };
+
+    @FunctionalInterface
+    public interface Listener {
+        // вызывается после каждой пачки, переданной в UserService
+        void onProgress(long bytesRead, long totalBytes, long imported, long skipped);
+    }
+}
@@ -0,0 +1,178 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш результатов login перед {@link UserStore}, включая неудачные попытки. Подключается через
+ * {@link UserService#enableLoginCache(LoginCacheSettings)}.
+ * <p>
+ * Ключ - SHA-256 от случайной соли кэша, username и пароля, сам пароль в кэше не хранится. Каждая запись помнит
+ * {@link UserStore#version()}, при котором была получена: после любого add она считается устаревшей.
+ * Кэш разбит на сегменты с LRU-вытеснением, чтобы параллельные login не упирались в одну блокировку.
+ * <p>
+ * Вычисление ключа стоит около 200 нс, а поиск в хранилищах с индексом по username - десятки наносекунд
+ * (см. LoginCacheBenchmark), так что кэш окупается только перед хранилищем с дорогим поиском.
+ */
+public class LoginCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LoginCacheSettings settings;
+    private final byte[] salt = new byte[16];
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(LoginCache::newDigest);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public LoginCache(LoginCacheSettings settings) {
+        if (settings.getMaximumSize() <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + settings.getMaximumSize());
+        }
+        this.settings = settings;
+        this.ttlNanos = settings.getTtl().toNanos();
+        this.negativeTtlNanos = settings.getNegativeTtl().toNanos();
+        int segmentSize = Math.max(1, (settings.getMaximumSize() + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+        new SecureRandom().nextBytes(salt);
+    }
+
+    Optional<User> login(String username, String password, UserStore userStore) {
+        // версию читаем до поиска: если add случится между ними, запись сразу окажется устаревшей
+        long version = userStore.version();
+        Key key = keyOf(username, password);
+        // сегмент выбирается по другим битам, чем бакет внутри LinkedHashMap
+        Segment segment = segments[(int) key.high & (SEGMENTS - 1)];
+        long now = settings.getTicker().getAsLong();
+
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null && (entry.version != version || now - entry.expiresAt >= 0)) {
+                segment.remove(key);
+                invalidations.increment();
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            hits.increment();
+            return Optional.ofNullable(entry.user);
+        }
+
+        misses.increment();
+        Optional<User> user = userStore.findByUsernameAndPassword(username, password);
+        Entry loaded = new Entry(user.orElse(null), version, now + (user.isPresent() ? ttlNanos : negativeTtlNanos));
+        synchronized (segment) {
+            segment.put(key, loaded);
+        }
+        return user;
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public LoginCacheStats getStats() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return new LoginCacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), size);
+    }
+
+    private Key keyOf(String username, String password) {
+        MessageDigest digest = digests.get();
+        byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+        digest.update(salt);
+        // длина username перед ним, чтобы пары ("ab", "c") и ("a", "bc") давали разные ключи
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(usernameBytes.length).array());
+        digest.update(usernameBytes);
+        digest.update(password.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+        // 128 бит из 256 достаточно, чтобы случайно не совпасть, и ключ занимает два long вместо массива
+        return new Key(hash.getLong(), hash.getLong());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 обязан поддерживаться любой реализацией Java
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Key {
+        private final long high;
+        private final long low;
+
+        private Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).high == high && ((Key) o).low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            // биты хэша и так случайны, перемешивать не нужно
+            return (int) low;
+        }
+    }
+
+    private static final class Entry {
+        // null - неудачная попытка входа
+        private final User user;
+        private final long version;
+        private final long expiresAt;
+
+        private Entry(User user, long version, long expiresAt) {
+            this.user = user;
+            this.version = version;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<Key, Entry> {
+        private final int maximumSize;
+
+        private Segment(int maximumSize) {
+            super(16, 0.75f, true);
+            this.maximumSize = maximumSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() > maximumSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.gorbunov.junit.service;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+@Value
+@Builder
+public class LoginCacheSettings {
+    // больше стольких пар логин/пароль кэш не держит, вытесняются давно не использованные
+    @Builder.Default
+    int maximumSize = 10_000;
+    // сколько живет найденный пользователь...
+    @Builder.Default
+    Duration ttl = Duration.ofMinutes(1);
+    // ...и неудачная попытка входа
+    @Builder.Default
+    Duration negativeTtl = Duration.ofSeconds(10);
+    // источник времени в наносекундах, подменяется в тестах
+    @Builder.Default
+    LongSupplier ticker = System::nanoTime;
+}
@@ -0,0 +1,14 @@
+package com.gorbunov.junit.service;
+
+import lombok.Value;
+
+@Value
+public class LoginCacheStats {
+    long hits;
+    long misses;
+    // вытеснено по размеру
+    long evictions;
+    // отброшено при чтении из-за истекшего ttl или изменившегося набора пользователей
+    long invalidations;
+    long size;
+}
@@ -0,0 +1,370 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static com.gorbunov.junit.service.UserSnapshot.*;
+
+/**
+ * Хранилище поверх снимка {@link UserSnapshot}, отображенного в память. Открытие не читает пользователей,
+ * login и поиск по id идут прямо по отображенным хэш-таблицам, поэтому время старта почти не зависит от их количества.
+ * Поиск по префиксу и постраничный вывод - бинарный поиск по отсортированной секции снимка,
+ * слитой с индексами пользователей, добавленных после открытия.
+ * <p>
+ * Снимок только для чтения: пользователи, добавленные после открытия, хранятся в памяти поверх него.
+ * Пользователь снимка, замененный по {@link DuplicateIdPolicy#REPLACE}, остается на своем месте в {@link #getAll()}.
+ * Не потокобезопасно для одновременной записи.
+ */
+public class MappedUserStore implements UserStore {
+
+    private final MappedByteBuffer buffer;
+    private final DuplicateIdPolicy duplicateIdPolicy;
+    private final int userCount;
+    private final int idTableSize;
+    private final int usernameTableSize;
+    private final int recordsOffset;
+    private final int idTableOffset;
+    private final int usernameTableOffset;
+    private final int sortedRowsOffset;
+    private final int stringsOffset;
+
+    // Замены пользователей из снимка и новые пользователи
+    private final DefaultUserStore replaced = new DefaultUserStore(DuplicateIdPolicy.REPLACE);
+    private final DefaultUserStore appended;
+    private final List<User> usersView = new UsersView();
+    private final Map<Integer, User> usersByIdView = new UsersByIdView();
+
+    private MappedUserStore(MappedByteBuffer buffer, DuplicateIdPolicy duplicateIdPolicy) {
+        this.buffer = buffer;
+        this.duplicateIdPolicy = duplicateIdPolicy;
+        this.userCount = buffer.getInt(USER_COUNT_POSITION);
+        this.idTableSize = buffer.getInt(ID_TABLE_SIZE_POSITION);
+        this.usernameTableSize = buffer.getInt(USERNAME_TABLE_SIZE_POSITION);
+        this.recordsOffset = buffer.getInt(RECORDS_OFFSET_POSITION);
+        this.idTableOffset = buffer.getInt(ID_TABLE_OFFSET_POSITION);
+        this.usernameTableOffset = buffer.getInt(USERNAME_TABLE_OFFSET_POSITION);
+        this.sortedRowsOffset = buffer.getInt(SORTED_ROWS_OFFSET_POSITION);
+        this.stringsOffset = buffer.getInt(STRINGS_OFFSET_POSITION);
+        this.appended = new DefaultUserStore(duplicateIdPolicy);
+    }
+
+    public static MappedUserStore open(Path file) throws IOException {
+        return open(file, DuplicateIdPolicy.REPLACE, true);
+    }
+
+    /**
+     * @param verifyChecksum проверка читает весь файл, без нее открытие выполняется за постоянное время
+     */
+    public static MappedUserStore open(Path file, DuplicateIdPolicy duplicateIdPolicy, boolean verifyChecksum) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a user snapshot: " + file);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Truncated snapshot: " + file);
+                }
+            }
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a user snapshot: " + file);
+            }
+            int version = header.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+            if (header.getInt(FILE_LENGTH_POSITION) != channel.size()) {
+                throw new IOException("Truncated snapshot: " + file);
+            }
+            // Заголовок проверяется до отображения, чтобы испорченные смещения не привели к чтению за пределами файла
+            checkLayout(header, channel.size(), file);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (verifyChecksum && checksum(buffer.slice(0, HEADER_SIZE), buffer.slice(HEADER_SIZE, buffer.capacity() - HEADER_SIZE))
+                != buffer.getLong(CHECKSUM_POSITION)) {
+            throw new IOException("Snapshot checksum mismatch: " + file);
+        }
+        return new MappedUserStore(buffer, duplicateIdPolicy);
+    }
+
+    /**
+     * Проверка заголовка за постоянное время: даже без контрольной суммы испорченный заголовок не должен приводить
+     * к чтению за пределами файла или бесконечному пробированию переполненной таблицы.
+     */
+    private static void checkLayout(ByteBuffer buffer, long fileLength, Path file) throws IOException {
+        long userCount = buffer.getInt(USER_COUNT_POSITION);
+        int idTableSize = buffer.getInt(ID_TABLE_SIZE_POSITION);
+        int usernameTableSize = buffer.getInt(USERNAME_TABLE_SIZE_POSITION);
+        if (userCount < 0 || !isTableSize(idTableSize, userCount) || !isTableSize(usernameTableSize, userCount)) {
+            throw new IOException("Corrupted snapshot header: " + file);
+        }
+        // Секции идут подряд в порядке записи, поэтому каждое смещение однозначно следует из предыдущего
+        long recordsOffset = HEADER_SIZE;
+        long idTableOffset = recordsOffset + userCount * RECORD_SIZE;
+        long usernameTableOffset = idTableOffset + (long) idTableSize * Integer.BYTES;
+        long sortedRowsOffset = usernameTableOffset + (long) usernameTableSize * Integer.BYTES;
+        long stringsOffset = sortedRowsOffset + userCount * Integer.BYTES;
+        if (buffer.getInt(RECORDS_OFFSET_POSITION) != recordsOffset
+                || buffer.getInt(ID_TABLE_OFFSET_POSITION) != idTableOffset
+                || buffer.getInt(USERNAME_TABLE_OFFSET_POSITION) != usernameTableOffset
+                || buffer.getInt(SORTED_ROWS_OFFSET_POSITION) != sortedRowsOffset
+                || buffer.getInt(STRINGS_OFFSET_POSITION) != stringsOffset
+                || stringsOffset > fileLength) {
+            throw new IOException("Corrupted snapshot header: " + file);
+        }
+    }
+
+    // В таблице должна оставаться свободная ячейка, иначе пробирование не остановится
+    private static boolean isTableSize(int tableSize, long userCount) {
+        return tableSize > userCount && Integer.bitCount(tableSize) == 1;
+    }
+
+    @Override
+    public void add(User user) {
+        if (user.getId() == null) {
+            throw new IllegalArgumentException("User id is null");
+        }
+        if (findRowById(user.getId()) == EMPTY) {
+            appended.add(user);
+        } else if (duplicateIdPolicy == DuplicateIdPolicy.REJECT) {
+            throw new IllegalStateException("Duplicate user id: " + user.getId());
+        } else {
+            replaced.add(user);
+        }
+    }
+
+    @Override
+    public List<User> getAll() {
+        return usersView;
+    }
+
+    @Override
+    public long version() {
+        return replaced.version() + appended.version();
+    }
+
+    @Override
+    public Optional<User> findByUsernameAndPassword(String username, String password) {
+        byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        int hash = Arrays.hashCode(usernameBytes);
+        int mask = usernameTableSize - 1;
+        int found = EMPTY;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int row = buffer.getInt(usernameTableOffset + slot * Integer.BYTES);
+            if (row == EMPTY) {
+                break;
+            }
+            int record = recordsOffset + row * RECORD_SIZE;
+            if (buffer.getInt(record + 20) == hash
+                    && (found == EMPTY || row < found)
+                    && matches(record + 4, usernameBytes)
+                    && matches(record + 12, passwordBytes)
+                    && !replaced.getAllConvertedById().containsKey(buffer.getInt(record))) {
+                found = row;
+            }
+        }
+        if (found != EMPTY) {
+            return Optional.of(materialize(found));
+        }
+        Optional<User> replacement = replaced.findByUsernameAndPassword(username, password);
+        return replacement.isPresent() ? replacement : appended.findByUsernameAndPassword(username, password);
+    }
+
+    @Override
+    public Optional<User> findById(int id) {
+        int row = findRowById(id);
+        if (row == EMPTY) {
+            return appended.findById(id);
+        }
+        Optional<User> replacement = replaced.findById(id);
+        return replacement.isPresent() ? replacement : Optional.of(materialize(row));
+    }
+
+    @Override
+    public List<User> findByUsernamePrefix(String prefix, int limit) {
+        return UsernameIndex.findByPrefix(usersFrom(prefix, true), prefix, limit);
+    }
+
+    @Override
+    public List<User> listUsers(String afterUsername, int pageSize) {
+        return UsernameIndex.page(usersFrom(afterUsername, false), pageSize);
+    }
+
+    @Override
+    public Map<Integer, User> getAllConvertedById() {
+        return usersByIdView;
+    }
+
+    // Замененные записи снимка пропускаются: их новые версии приходят из replaced
+    private Iterator<User> usersFrom(String username, boolean inclusive) {
+        int start = username == null ? 0 : lowerBound(username.getBytes(StandardCharsets.UTF_8), inclusive);
+        Iterator<User> snapshotUsers = new Iterator<>() {
+            private int index = skipReplaced(start);
+
+            @Override
+            public boolean hasNext() {
+                return index < userCount;
+            }
+
+            @Override
+            public User next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                User user = materialize(sortedRowAt(index));
+                index = skipReplaced(index + 1);
+                return user;
+            }
+        };
+        return UsernameIndex.merge(List.of(snapshotUsers,
+                replaced.usersFrom(username, inclusive), appended.usersFrom(username, inclusive)));
+    }
+
+    private int skipReplaced(int index) {
+        while (index < userCount
+                && replaced.getAllConvertedById().containsKey(buffer.getInt(recordsOffset + sortedRowAt(index) * RECORD_SIZE))) {
+            index++;
+        }
+        return index;
+    }
+
+    private int lowerBound(byte[] key, boolean inclusive) {
+        int low = 0;
+        int high = userCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int cmp = compareUsername(recordsOffset + sortedRowAt(middle) * RECORD_SIZE + 4, key);
+            if (cmp < 0 || (cmp == 0 && !inclusive)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int sortedRowAt(int index) {
+        return buffer.getInt(sortedRowsOffset + index * Integer.BYTES);
+    }
+
+    // Порядок как у String.compareTo, см. UsernameIndex.compareUtf8
+    private int compareUsername(int position, byte[] key) {
+        int offset = stringsOffset + buffer.getInt(position);
+        int length = buffer.getInt(position + 4);
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            byte b = buffer.get(offset + i);
+            if (b != key[i]) {
+                return UsernameIndex.compareUtf8(b, key[i]);
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private int findRowById(int id) {
+        int mask = idTableSize - 1;
+        for (int slot = mix(id) & mask; ; slot = (slot + 1) & mask) {
+            int row = buffer.getInt(idTableOffset + slot * Integer.BYTES);
+            if (row == EMPTY || buffer.getInt(recordsOffset + row * RECORD_SIZE) == id) {
+                return row;
+            }
+        }
+    }
+
+    private User materialize(int row) {
+        int record = recordsOffset + row * RECORD_SIZE;
+        return User.of(buffer.getInt(record), readString(record + 4), readString(record + 12));
+    }
+
+    // В записи по position лежат смещение строки относительно секции strings и ее длина
+    private String readString(int position) {
+        byte[] bytes = new byte[buffer.getInt(position + 4)];
+        buffer.get(stringsOffset + buffer.getInt(position), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean matches(int position, byte[] expected) {
+        if (buffer.getInt(position + 4) != expected.length) {
+            return false;
+        }
+        int offset = stringsOffset + buffer.getInt(position);
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(offset + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class UsersView extends AbstractList<User> implements RandomAccess {
+
+        @Override
+        public User get(int index) {
+            Objects.checkIndex(index, size());
+            if (index >= userCount) {
+                return appended.getAll().get(index - userCount);
+            }
+            User replacement = replaced.getAllConvertedById().get(buffer.getInt(recordsOffset + index * RECORD_SIZE));
+            return replacement != null ? replacement : materialize(index);
+        }
+
+        @Override
+        public int size() {
+            return userCount + appended.getAll().size();
+        }
+    }
+
+    private final class UsersByIdView extends AbstractMap<Integer, User> {
+
+        @Override
+        public int size() {
+            return usersView.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Integer && (findRowById((Integer) key) != EMPTY || appended.getAllConvertedById().containsKey(key));
+        }
+
+        @Override
+        public User get(Object key) {
+            return key instanceof Integer ? findById((Integer) key).orElse(null) : null;
+        }
+
+        @Override
+        public Set<Entry<Integer, User>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return usersView.size();
+                }
+
+                @Override
+                public Iterator<Entry<Integer, User>> iterator() {
+                    Iterator<User> users = usersView.iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return users.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Integer, User> next() {
+                            User user = users.next();
+                            return new SimpleImmutableEntry<>(user.getId(), user);
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dao.UserDao;
+import com.gorbunov.junit.dto.User;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Сервис, разбивающий пользователей на несколько шардов двумя способами. Хранилища делятся по id: один id всегда
+ * попадает в одно хранилище, поэтому {@link DuplicateIdPolicy} работает как в обычном {@link UserService}, а findById
+ * и delete идут ровно в одно хранилище. Индексы для login делятся по хэшу username: login смотрит ровно в один индекс,
+ * и общей для всех шардов структуры нет. getAll, getAllConvertedById и пакетный add параллельно выполняются
+ * по шардам в {@link ForkJoinPool}.
+ * <p>
+ * Хранилище по умолчанию - {@link ConcurrentUserStore} без индексов по username, так как один шард могут
+ * одновременно читать и писать разные потоки, а login идет только через индексы самого сервиса. Изменения одного шарда по id выполняются под его блокировкой, чтобы замена пользователя
+ * и обновление индексов по username были согласованы.
+ */
+public class ShardedUserService {
+
+    // Меньшие пакеты быстрее добавить в текущем потоке, чем раздавать по задачам
+    private static final int PARALLEL_ADD_THRESHOLD = 1_024;
+    // Шардов больше, чем ядер, fan-out не ускоряет, а каждый шард - отдельное хранилище со своими индексами
+    private static final int MAX_SHARDS = 64;
+
+    private final UserStore[] stores;
+    private final Object[] storeLocks;
+    // username -> пользователи с этим username, шард выбирается по хэшу username. Обычно массив из одного элемента
+    private final ConcurrentMap<String, User[]>[] loginIndexes;
+    private final UserDao[] userDaos;
+    private final ForkJoinPool pool;
+    private volatile UsersById usersById = new UsersById(-1, Map.of());
+
+    public ShardedUserService(UserDao userDao, int shardCount) {
+        this(Collections.nCopies(shardCount, userDao),
+                () -> ConcurrentUserStore.withoutUsernameIndex(DuplicateIdPolicy.REPLACE), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param userDaos DAO для каждого шарда, их число задает число шардов. Можно передать один и тот же DAO несколько раз
+     */
+    public ShardedUserService(List<UserDao> userDaos, Supplier<UserStore> storeFactory, ForkJoinPool pool) {
+        if (userDaos.isEmpty() || userDaos.size() > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS + ": " + userDaos.size());
+        }
+        this.userDaos = userDaos.toArray(new UserDao[0]);
+        this.stores = new UserStore[userDaos.size()];
+        this.storeLocks = new Object[stores.length];
+        this.loginIndexes = newLoginIndexes(stores.length);
+        for (int i = 0; i < stores.length; i++) {
+            stores[i] = storeFactory.get();
+            storeLocks[i] = new Object();
+        }
+        this.pool = pool;
+    }
+
+    public int getShardCount() {
+        return stores.length;
+    }
+
+    public void add(User... users) {
+        for (User user : users) {
+            if (user.getId() == null) {
+                throw new IllegalArgumentException("User id is null");
+            }
+        }
+        if (users.length < PARALLEL_ADD_THRESHOLD || stores.length == 1) {
+            for (User user : users) {
+                addToShard(shardOf(user.getId()), user);
+            }
+            return;
+        }
+        List<List<User>> usersByShard = new ArrayList<>(stores.length);
+        for (int i = 0; i < stores.length; i++) {
+            usersByShard.add(new ArrayList<>(users.length / stores.length + 1));
+        }
+        for (User user : users) {
+            usersByShard.get(shardOf(user.getId())).add(user);
+        }
+        // порядок добавления внутри шарда сохраняется, так что замены по одному id применяются как при последовательном add
+        pool.invoke(new ShardAction(0, stores.length, shard -> {
+            for (User user : usersByShard.get(shard)) {
+                addToShard(shard, user);
+            }
+        }));
+    }
+
+    public Optional<User> login(String username, String password) {
+        if (username == null || password == null) {
+            throw new IllegalArgumentException("Username or password is null");
+        }
+        User[] candidates = loginIndexes[shardOf(username)].get(username);
+        if (candidates == null) {
+            return Optional.empty();
+        }
+        for (User user : candidates) {
+            if (user.getPassword().equals(password)) {
+                return Optional.of(user);
+            }
+        }
+        return Optional.empty();
+    }
+
+    public Optional<User> findById(int id) {
+        return stores[shardOf(id)].findById(id);
+    }
+
+    public boolean delete(int userId) {
+        return userDaos[shardOf(userId)].delete(userId);
+    }
+
+    /**
+     * Неизменяемый список всех пользователей, шард за шардом. Шарды копируются в общий массив параллельно.
+     */
+    public List<User> getAll() {
+        List<List<User>> shardUsers = new ArrayList<>(stores.length);
+        int[] offsets = new int[stores.length + 1];
+        for (int i = 0; i < stores.length; i++) {
+            List<User> users = stores[i].getAll();
+            shardUsers.add(users);
+            offsets[i + 1] = offsets[i] + users.size();
+        }
+        User[] result = new User[offsets[stores.length]];
+        pool.invoke(new ShardAction(0, stores.length, shard -> {
+            int offset = offsets[shard];
+            for (User user : shardUsers.get(shard)) {
+                result[offset++] = user;
+            }
+        }));
+        return Collections.unmodifiableList(Arrays.asList(result));
+    }
+
+    /**
+     * Неизменяемая карта id -> пользователь: шарды параллельно копируются в свои карты, которые затем попарно сливаются.
+     * Пока {@link #version()} не меняется, повторные вызовы возвращают ту же карту.
+     */
+    public Map<Integer, User> getAllConvertedById() {
+        // версия читается до сборки: если add пройдет во время сборки, следующий вызов соберет карту заново
+        long version = version();
+        UsersById cached = usersById;
+        if (cached.version == version) {
+            return cached.users;
+        }
+        Map<Integer, User> users = Collections.unmodifiableMap(pool.invoke(new MergeUsersByIdTask(0, stores.length)));
+        usersById = new UsersById(version, users);
+        return users;
+    }
+
+    public long version() {
+        long version = 0;
+        for (UserStore store : stores) {
+            version += store.version();
+        }
+        return version;
+    }
+
+    private void addToShard(int shard, User user) {
+        synchronized (storeLocks[shard]) {
+            Optional<User> previous = stores[shard].findById(user.getId());
+            stores[shard].add(user);
+            previous.ifPresent(this::removeFromLoginIndex);
+            loginIndexes[shardOf(user.getUsername())].merge(user.getUsername(), new User[]{user}, (users, added) -> {
+                User[] merged = Arrays.copyOf(users, users.length + 1);
+                merged[users.length] = added[0];
+                return merged;
+            });
+        }
+    }
+
+    private void removeFromLoginIndex(User user) {
+        loginIndexes[shardOf(user.getUsername())].computeIfPresent(user.getUsername(), (username, users) -> {
+            for (int i = 0; i < users.length; i++) {
+                if (users[i].equals(user)) {
+                    if (users.length == 1) {
+                        return null;
+                    }
+                    User[] rest = new User[users.length - 1];
+                    System.arraycopy(users, 0, rest, 0, i);
+                    System.arraycopy(users, i + 1, rest, i, users.length - i - 1);
+                    return rest;
+                }
+            }
+            return users;
+        });
+    }
+
+    private int shardOf(int id) {
+        return Math.floorMod(id, stores.length);
+    }
+
+    private int shardOf(String username) {
+        return shardOf(username, stores.length);
+    }
+
+    // Младшие биты произведения h * 0x9E3779B9 зависят только от младших бит h, а старшие - от всех. Поэтому шард
+    // выбирается по старшим: беззнаковое произведение переводится в [0, shardCount) умножением и сдвигом на 32,
+    // что работает для любого числа шардов, а не только для степени двойки
+    static int shardOf(String username, int shardCount) {
+        long mixed = Integer.toUnsignedLong(username.hashCode() * 0x9E3779B9);
+        return (int) ((mixed * shardCount) >>> 32);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrentMap<String, User[]>[] newLoginIndexes(int count) {
+        ConcurrentMap<String, User[]>[] indexes = new ConcurrentMap[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = new ConcurrentHashMap<>();
+        }
+        return indexes;
+    }
+
+    private interface ShardTask {
+        void run(int shard);
+    }
+
+    // Делит диапазон шардов пополам, пока не останется один шард
+    private static final class ShardAction extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+        private final ShardTask task;
+
+        private ShardAction(int from, int to, ShardTask task) {
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                task.run(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ShardAction(from, middle, task), new ShardAction(middle, to, task));
+        }
+    }
+
+    private static final class UsersById {
+        private final long version;
+        private final Map<Integer, User> users;
+
+        private UsersById(long version, Map<Integer, User> users) {
+            this.version = version;
+            this.users = users;
+        }
+    }
+
+    // Каждый шард копируется в свою карту, затем меньшая карта вливается в большую
+    private final class MergeUsersByIdTask extends RecursiveTask<Map<Integer, User>> {
+
+        private final int from;
+        private final int to;
+
+        private MergeUsersByIdTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<Integer, User> compute() {
+            if (to - from == 1) {
+                return new HashMap<>(stores[from].getAllConvertedById());
+            }
+            int middle = (from + to) >>> 1;
+            MergeUsersByIdTask left = new MergeUsersByIdTask(from, middle);
+            left.fork();
+            Map<Integer, User> right = new MergeUsersByIdTask(middle, to).compute();
+            Map<Integer, User> merged = left.join();
+            if (merged.size() < right.size()) {
+                Map<Integer, User> smaller = merged;
+                merged = right;
+                right = smaller;
+            }
+            merged.putAll(right);
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Потоковый импорт пользователей из CSV или NDJSON. Файл читается кусками по {@link ImportSettings#getChunkSize()} байт,
+ * пользователи передаются в {@link UserService#add(User...)} пачками, так что кроме самого хранилища в памяти
+ * держатся только буфер, текущая строка и одна пачка.
+ * <p>
+ * Строка, которую не удалось разобрать или добавить, пропускается и попадает в {@link ImportReport}.
+ */
+public final class UserImporter {
+
+    private static final String CSV_HEADER = "id,username,password";
+
+    private final UserService userService;
+    private final ImportSettings settings;
+
+    private final List<ImportReport.RejectedRow> rejectedRows = new ArrayList<>();
+    private final User[] batch;
+    private final long[] batchLines;
+    private int batchSize;
+    private long imported;
+    private long skipped;
+    private long bytesRead;
+    private long totalBytes;
+
+    private byte[] line;
+    private int lineLength;
+    private boolean lineTooLong;
+    private long lineNumber;
+
+    public UserImporter(UserService userService, ImportSettings settings) {
+        if (settings.getChunkSize() <= 0 || settings.getBatchSize() <= 0 || settings.getMaxLineLength() <= 0) {
+            throw new IllegalArgumentException("Chunk size, batch size and max line length must be positive");
+        }
+        this.userService = userService;
+        this.settings = settings;
+        this.batch = new User[settings.getBatchSize()];
+        this.batchLines = new long[settings.getBatchSize()];
+        this.line = new byte[Math.min(settings.getMaxLineLength(), 256)];
+    }
+
+    /**
+     * Импортер одноразовый: повторный вызов для того же экземпляра не поддерживается.
+     */
+    public ImportReport importFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            totalBytes = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(settings.getChunkSize());
+            byte[] chunk = buffer.array();
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                bytesRead += read;
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (chunk[i] == '\n') {
+                        appendToLine(chunk, start, i - start);
+                        completeLine();
+                        start = i + 1;
+                    }
+                }
+                appendToLine(chunk, start, read - start);
+                buffer.clear();
+            }
+            if (lineLength > 0 || lineTooLong) {
+                completeLine();
+            }
+            flushBatch();
+        }
+        // ошибки добавления находятся при сбросе пачки, то есть позже ошибок разбора следующих строк
+        rejectedRows.sort(Comparator.comparingLong(ImportReport.RejectedRow::getLine));
+        return new ImportReport(imported, skipped, List.copyOf(rejectedRows));
+    }
+
+    private void appendToLine(byte[] chunk, int offset, int length) {
+        if (lineTooLong || length == 0) {
+            return;
+        }
+        if (lineLength + length > settings.getMaxLineLength()) {
+            lineTooLong = true;
+            return;
+        }
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.min(settings.getMaxLineLength(), Math.max(line.length * 2, lineLength + length)));
+        }
+        System.arraycopy(chunk, offset, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void completeLine() {
+        lineNumber++;
+        try {
+            if (lineTooLong) {
+                reject(lineNumber, "Line is longer than " + settings.getMaxLineLength() + " bytes");
+                return;
+            }
+            int offset = 0;
+            int length = lineLength;
+            if (lineNumber == 1 && length >= 3 && line[0] == (byte) 0xEF && line[1] == (byte) 0xBB && line[2] == (byte) 0xBF) {
+                offset = 3;
+                length -= 3;
+            }
+            if (length > 0 && line[offset + length - 1] == '\r') {
+                length--;
+            }
+            String text = new String(line, offset, length, StandardCharsets.UTF_8);
+            if (text.isBlank() || lineNumber == 1 && settings.getFormat() == ImportFormat.CSV && text.equalsIgnoreCase(CSV_HEADER)) {
+                return;
+            }
+            try {
+                addToBatch(settings.getFormat() == ImportFormat.CSV ? parseCsv(text) : parseNdjson(text));
+            } catch (IllegalArgumentException e) {
+                reject(lineNumber, e.getMessage());
+            }
+        } finally {
+            lineLength = 0;
+            lineTooLong = false;
+        }
+    }
+
+    private void addToBatch(User user) {
+        batch[batchSize] = user;
+        batchLines[batchSize] = lineNumber;
+        if (++batchSize == batch.length) {
+            flushBatch();
+        }
+    }
+
+    private void flushBatch() {
+        if (batchSize == 0) {
+            settings.getListener().onProgress(bytesRead, totalBytes, imported, skipped);
+            return;
+        }
+        User[] users = batchSize == batch.length ? batch : Arrays.copyOf(batch, batchSize);
+        try {
+            userService.add(users);
+            imported += batchSize;
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // add прерывается на первом отклоненном пользователе (например, по DuplicateIdPolicy.REJECT), и какая часть
+            // пачки уже добавлена, неизвестно. Поэтому пачка повторяется по одному, уже добавленные узнаются по findById
+            for (int i = 0; i < batchSize; i++) {
+                addOne(users[i], batchLines[i]);
+            }
+        }
+        batchSize = 0;
+        settings.getListener().onProgress(bytesRead, totalBytes, imported, skipped);
+    }
+
+    private void addOne(User user, long line) {
+        Optional<User> existing = userService.findById(user.getId());
+        if (existing.isPresent() && existing.get().equals(user)) {
+            imported++;
+            return;
+        }
+        try {
+            userService.add(user);
+            imported++;
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            reject(line, e.getMessage());
+        }
+    }
+
+    private void reject(long line, String reason) {
+        skipped++;
+        if (rejectedRows.size() < settings.getMaxReportedErrors()) {
+            rejectedRows.add(new ImportReport.RejectedRow(line, reason));
+        }
+    }
+
+    private static User parseCsv(String text) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < text.length() && text.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= text.length()) {
+                        throw new IllegalArgumentException("Unterminated quoted field");
+                    }
+                    char c = text.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < text.length() && text.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (i < text.length() && text.charAt(i) != ',') {
+                    throw new IllegalArgumentException("Unexpected character after quoted field at " + i);
+                }
+            } else {
+                int end = text.indexOf(',', i);
+                end = end == -1 ? text.length() : end;
+                field.append(text, i, end);
+                i = end;
+            }
+            fields.add(field.toString());
+            if (i >= text.length()) {
+                break;
+            }
+            i++;
+        }
+        if (fields.size() != 3) {
+            throw new IllegalArgumentException("Expected 3 fields but found " + fields.size());
+        }
+        return toUser(parseId(fields.get(0).trim()), fields.get(1), fields.get(2));
+    }
+
+    private static User parseNdjson(String text) {
+        return new JsonObjectParser(text).parseUser();
+    }
+
+    private static int parseId(String id) {
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid id: " + id);
+        }
+    }
+
+    private static User toUser(Integer id, String username, String password) {
+        if (id == null) {
+            throw new IllegalArgumentException("Id is missing");
+        }
+        if (username == null || username.isEmpty()) {
+            throw new IllegalArgumentException("Username is missing");
+        }
+        if (password == null) {
+            throw new IllegalArgumentException("Password is missing");
+        }
+        return User.of(id, username, password);
+    }
+
+    // Разбирает один плоский JSON-объект. Вложенные объекты и массивы в значениях не поддерживаются
+    private static final class JsonObjectParser {
+
+        private final String text;
+        private int position;
+
+        private JsonObjectParser(String text) {
+            this.text = text;
+        }
+
+        private User parseUser() {
+            Integer id = null;
+            String username = null;
+            String password = null;
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    String key = parseString();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                    switch (key) {
+                        case "id":
+                            id = parseId(parseNumber());
+                            break;
+                        case "username":
+                            username = parseString();
+                            break;
+                        case "password":
+                            password = parseString();
+                            break;
+                        default:
+                            skipValue();
+                    }
+                    skipWhitespace();
+                    if (peek() == ',') {
+                        position++;
+                    } else {
+                        expect('}');
+                        break;
+                    }
+                }
+            }
+            skipWhitespace();
+            if (position != text.length()) {
+                throw new IllegalArgumentException("Unexpected content after JSON object at " + position);
+            }
+            return toUser(id, username, password);
+        }
+
+        private String parseString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (position >= text.length()) {
+                    throw new IllegalArgumentException("Unterminated JSON string");
+                }
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    throw new IllegalArgumentException("Unterminated JSON string");
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        value.append(escaped);
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw new IllegalArgumentException("Invalid unicode escape at " + position);
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("Invalid unicode escape at " + position);
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid escape \\" + escaped + " at " + position);
+                }
+            }
+        }
+
+        private String parseNumber() {
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Expected number at " + start);
+            }
+            return text.substring(start, position);
+        }
+
+        private void skipValue() {
+            char c = peek();
+            if (c == '"') {
+                parseString();
+            } else if (c == '-' || c >= '0' && c <= '9') {
+                parseNumber();
+            } else if (text.startsWith("true", position) || text.startsWith("null", position)) {
+                position += 4;
+            } else if (text.startsWith("false", position)) {
+                position += 5;
+            } else {
+                throw new IllegalArgumentException("Unsupported JSON value at " + position);
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private char peek() {
+            if (position >= text.length()) {
+                throw new IllegalArgumentException("Unexpected end of JSON");
+            }
+            return text.charAt(position);
+        }
+
+        private void expect(char expected) {
+            if (peek() != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at " + position);
+            }
+            position++;
+        }
+    }
+}
@@ -1,47 +1,400 @@
 package com.gorbunov.junit.service;
 
 import com.gorbunov.junit.dao.UserDao;
+import com.gorbunov.junit.dto.Credentials;
+import com.gorbunov.junit.dto.LoginResult;
 import com.gorbunov.junit.dto.User;
+import com.gorbunov.junit.metrics.LatencyRecorder;
+import com.gorbunov.junit.metrics.Operation;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
 
 public class UserService {
 
-    private final List<User> users = new ArrayList<>();
+    private static final System.Logger LOG = System.getLogger(UserService.class.getName());
+    // Столько проверок из loginAll выполняет одна задача пула: меньшие куски не окупают постановку задачи
+    private static final int LOGIN_BATCH_CHUNK = 64;
+
+    private final UserStore userStore;
     private final UserDao userDao;
+    private volatile UserWriteAheadLog writeAheadLog;
+    // Только при включенном журнале: изменения берут read lock на запись в журнал и само изменение, checkpoint - write lock,
+    // чтобы журнал не очистился между записью в него и изменением. StampedLock, так как deleteAsync отпускает
+    // блокировку из другого потока
+    private final StampedLock journalLock = new StampedLock();
+    private volatile WriteBehindDeleteQueue deleteQueue;
+    private volatile LatencyRecorder latencyRecorder;
+    private volatile LoginCache loginCache;
 
     public UserService(UserDao userDao) {
+        this(userDao, new DefaultUserStore());
+    }
+
+    public UserService(UserDao userDao, UserStore userStore) {
         this.userDao = userDao;
+        this.userStore = Objects.requireNonNull(userStore, "userStore");
+    }
+
+    public static UserService fromSnapshot(UserDao userDao, Path snapshot) throws IOException {
+        return new UserService(userDao, MappedUserStore.open(snapshot));
+    }
+
+    /**
+     * Проигрывает журнал в сервис и дальше записывает в него каждое принятое хранилищем add и каждый delete
+     * до его выполнения. Добавления восстанавливаются в хранилище, удаления повторно отправляются в DAO одним пакетом:
+     * они идемпотентны, а подтверждения из базы журнал не хранит. Чтобы журнал не рос бесконечно, его нужно
+     * периодически очищать через {@link #checkpoint(Path)}, а при старте создавать сервис из последнего снимка.
+     *
+     * @return сколько добавлений из журнала хранилище отклонило при проигрывании
+     */
+    public int enableWriteAheadLog(UserWriteAheadLog writeAheadLog) throws IOException {
+        Set<Integer> deletedIds = new LinkedHashSet<>();
+        List<Integer> rejectedIds = new ArrayList<>();
+        writeAheadLog.replay(user -> {
+            try {
+                userStore.add(user);
+            } catch (IllegalStateException e) {
+                // пользователь, добавленный во время checkpoint, может оказаться и в снимке, и в журнале,
+                // а хранилище с DuplicateIdPolicy.REJECT не принимает его повторно
+                rejectedIds.add(user.getId());
+            }
+        }, deletedIds::add);
+        if (!rejectedIds.isEmpty()) {
+            LOG.log(System.Logger.Level.WARNING, "Write-ahead log replay skipped " + rejectedIds.size()
+                    + " add records rejected by the store, user ids: " + rejectedIds);
+        }
+        if (!deletedIds.isEmpty()) {
+            userDao.deleteAll(deletedIds);
+        }
+        this.writeAheadLog = writeAheadLog;
+        return rejectedIds.size();
+    }
+
+    /**
+     * Включает отложенное удаление: {@link #delete(Integer)} только ставит id в очередь и сразу возвращает true.
+     * Закрывать очередь (и тем самым дожидаться удаления оставшихся id) должен вызывающий код. После закрытия
+     * delete снова удаляет синхронно. Предыдущая очередь, если была, закрывается со сбросом накопленных id.
+     */
+    public synchronized WriteBehindDeleteQueue enableWriteBehind(WriteBehindSettings settings) {
+        WriteBehindDeleteQueue previous = this.deleteQueue;
+        if (previous != null) {
+            previous.close();
+        }
+        WriteBehindDeleteQueue deleteQueue = new WriteBehindDeleteQueue(userDao, settings);
+        this.deleteQueue = deleteQueue;
+        return deleteQueue;
+    }
+
+    // Замеряет login, add, getAllConvertedById и delete. DAO оборачивается отдельно через LatencyRecorder.wrap
+    public void enableLatencyRecording(LatencyRecorder latencyRecorder) {
+        this.latencyRecorder = latencyRecorder;
+    }
+
+    /**
+     * Включает кэш результатов login, в том числе неудачных. Кэш сам отбрасывает записи, полученные до последнего add.
+     */
+    public LoginCache enableLoginCache(LoginCacheSettings settings) {
+        LoginCache loginCache = new LoginCache(settings);
+        this.loginCache = loginCache;
+        return loginCache;
     }
 
     public boolean delete(Integer userId) {
-        return userDao.delete(userId);
+        if (userId == null) {
+            throw new IllegalArgumentException("User id is null");
+        }
+        return deleteById(userId);
+    }
+
+    public boolean delete(int userId) {
+        return deleteById(userId);
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(Integer userId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("User id is null");
+        }
+        UserWriteAheadLog writeAheadLog = this.writeAheadLog;
+        if (writeAheadLog == null) {
+            return userDao.deleteAsync(userId);
+        }
+        // блокировка держится до завершения удаления, чтобы checkpoint не стер из журнала еще не выполненный delete
+        long stamp = journalLock.readLock();
+        try {
+            writeAheadLog.appendDelete(userId);
+            return userDao.deleteAsync(userId).whenComplete((deleted, error) -> journalLock.unlockRead(stamp));
+        } catch (RuntimeException e) {
+            journalLock.unlockRead(stamp);
+            throw e;
+        }
+    }
+
+    public Map<Integer, Boolean> deleteAll(Collection<Integer> userIds) {
+        return deleteAllJournaled(userIds, () -> userDao.deleteAll(userIds));
+    }
+
+    public Map<Integer, Boolean> deleteAll(Collection<Integer> userIds, int batchSize) {
+        return deleteAllJournaled(userIds, () -> userDao.deleteAll(userIds, batchSize));
     }
 
     public List<User> getAll() {
 
-        return users;
+        return userStore.getAll();
+    }
+
+    // См. UserStore.version(): по нему кэши поверх getAll() понимают, что пора перестроиться
+    public long version() {
+        return userStore.version();
     }
 
     public void add(User... users) {
-        Collections.addAll(this.users, users);
+        LatencyRecorder recorder = this.latencyRecorder;
+        long start = recorder != null ? System.nanoTime() : 0L;
+        boolean failed = true;
+        try {
+            UserWriteAheadLog writeAheadLog = this.writeAheadLog;
+            if (writeAheadLog == null) {
+                for (User user : users) {
+                    userStore.add(user);
+                }
+            } else {
+                long stamp = journalLock.readLock();
+                try {
+                    addAndJournal(writeAheadLog, users);
+                } finally {
+                    journalLock.unlockRead(stamp);
+                }
+            }
+            failed = false;
+        } finally {
+            if (recorder != null) {
+                recorder.record(Operation.ADD, start, failed);
+            }
+        }
     }
 
     public Optional<User> login(String username, String password) {
-        if(username == null || password == null) {
-            throw  new IllegalArgumentException("Username or password is null");
+        LatencyRecorder recorder = this.latencyRecorder;
+        long start = recorder != null ? System.nanoTime() : 0L;
+        boolean failed = true;
+        try {
+            if(username == null || password == null) {
+                throw  new IllegalArgumentException("Username or password is null");
+            }
+
+            LoginCache loginCache = this.loginCache;
+            Optional<User> user = loginCache != null
+                    ? loginCache.login(username, password, userStore)
+                    : userStore.findByUsernameAndPassword(username, password);
+            failed = false;
+            return user;
+        } finally {
+            if (recorder != null) {
+                recorder.record(Operation.LOGIN, start, failed);
+            }
+        }
+    }
+
+    /**
+     * Проверяет пары логин/пароль по очереди и возвращает результаты в том же порядке. Пара, на которой login
+     * бросил бы IllegalArgumentException, получает результат с этой ошибкой, остальные проверяются как обычно.
+     */
+    public List<LoginResult> loginAll(List<Credentials> credentials) {
+        LoginResult[] results = new LoginResult[credentials.size()];
+        loginRange(credentials, results, 0, results.length);
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     * То же, что {@link #loginAll(List)}, но большие пакеты проверяются параллельно в {@code pool}.
+     * Во время такой проверки хранилище не должно меняться, если оно не потокобезопасно (см. {@link ConcurrentUserStore}).
+     */
+    public List<LoginResult> loginAll(List<Credentials> credentials, ForkJoinPool pool) {
+        LoginResult[] results = new LoginResult[credentials.size()];
+        if (results.length <= LOGIN_BATCH_CHUNK) {
+            loginRange(credentials, results, 0, results.length);
+        } else {
+            // каждая задача начинает с listIterator(from), а у LinkedList это O(from)
+            List<Credentials> indexed = credentials instanceof RandomAccess ? credentials : new ArrayList<>(credentials);
+            pool.invoke(new LoginAllAction(indexed, results, 0, results.length));
+        }
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    public Optional<User> findById(int id) {
+        return userStore.findById(id);
+    }
+
+    public List<User> findByUsernamePrefix(String prefix, int limit) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Prefix is null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
         }
+        return userStore.findByUsernamePrefix(prefix, limit);
+    }
 
-        return users.stream()
-                .filter(user -> user.getUsername().equals(username))
-                .filter(user -> user.getPassword().equals(password))
-                .findFirst();
+    /**
+     * @param afterUsername последний username предыдущей страницы или {@code null} для первой страницы
+     */
+    public List<User> listUsers(String afterUsername, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        return userStore.listUsers(afterUsername, pageSize);
     }
 
     public Map<Integer, User> getAllConvertedById() {
-        return users.stream()
-                .collect(Collectors.toMap(User::getId, Function.identity()));
+        LatencyRecorder recorder = this.latencyRecorder;
+        if (recorder == null) {
+            return userStore.getAllConvertedById();
+        }
+        long start = System.nanoTime();
+        Map<Integer, User> users = userStore.getAllConvertedById();
+        recorder.record(Operation.GET_ALL_CONVERTED_BY_ID, start, false);
+        return users;
+    }
+
+    public ImportReport importUsers(Path file, ImportSettings settings) throws IOException {
+        return new UserImporter(this, settings).importFile(file);
+    }
+
+    public void saveSnapshot(Path snapshot) throws IOException {
+        UserSnapshot.write(userStore.getAll(), snapshot);
+    }
+
+    /**
+     * Сохраняет снимок и очищает журнал: после этого сервис восстанавливается через {@link #fromSnapshot(UserDao, Path)}
+     * и {@link #enableWriteAheadLog(UserWriteAheadLog)}, проигрывая только изменения после checkpoint.
+     * Отложенные удаления перед этим отправляются в DAO. На время checkpoint add и delete ждут.
+     */
+    public void checkpoint(Path snapshot) throws IOException {
+        UserWriteAheadLog writeAheadLog = this.writeAheadLog;
+        if (writeAheadLog == null) {
+            throw new IllegalStateException("Write-ahead log is not enabled");
+        }
+        long stamp = journalLock.writeLock();
+        try {
+            WriteBehindDeleteQueue deleteQueue = this.deleteQueue;
+            if (deleteQueue != null) {
+                deleteQueue.flush();
+            }
+            saveSnapshot(snapshot);
+            writeAheadLog.truncate();
+        } finally {
+            journalLock.unlockWrite(stamp);
+        }
+    }
+
+    // Журнал и очередь отложенного удаления принимают int, упаковка остается только на вызове UserDao.delete(Integer)
+    private boolean deleteById(int userId) {
+        LatencyRecorder recorder = this.latencyRecorder;
+        long start = recorder != null ? System.nanoTime() : 0L;
+        boolean failed = true;
+        UserWriteAheadLog writeAheadLog = this.writeAheadLog;
+        long stamp = writeAheadLog != null ? journalLock.readLock() : 0L;
+        try {
+            if (writeAheadLog != null) {
+                writeAheadLog.appendDelete(userId);
+            }
+            WriteBehindDeleteQueue deleteQueue = this.deleteQueue;
+            if (deleteQueue != null && deleteQueue.offer(userId)) {
+                failed = false;
+                return true;
+            }
+            boolean result = userDao.delete(userId);
+            failed = false;
+            return result;
+        } finally {
+            if (writeAheadLog != null) {
+                journalLock.unlockRead(stamp);
+            }
+            if (recorder != null) {
+                recorder.record(Operation.DELETE, start, failed);
+            }
+        }
+    }
+
+    private void loginRange(List<Credentials> credentials, LoginResult[] results, int from, int to) {
+        Iterator<Credentials> iterator = credentials.listIterator(from);
+        for (int i = from; i < to; i++) {
+            Credentials pair = iterator.next();
+            try {
+                if (pair == null) {
+                    throw new IllegalArgumentException("Credentials is null");
+                }
+                results[i] = LoginResult.of(login(pair.getUsername(), pair.getPassword()));
+            } catch (IllegalArgumentException e) {
+                results[i] = LoginResult.failed(e);
+            }
+        }
+    }
+
+    // add прерывается на первом отклоненном пользователе, в журнал попадают только принятые до него
+    private void addAndJournal(UserWriteAheadLog writeAheadLog, User[] users) {
+        int accepted = 0;
+        RuntimeException rejection = null;
+        for (User user : users) {
+            try {
+                userStore.add(user);
+            } catch (RuntimeException e) {
+                rejection = e;
+                break;
+            }
+            accepted++;
+        }
+        if (accepted > 0) {
+            writeAheadLog.appendAdd(accepted == users.length ? users : Arrays.copyOf(users, accepted));
+        }
+        if (rejection != null) {
+            throw rejection;
+        }
+    }
+
+    private Map<Integer, Boolean> deleteAllJournaled(Collection<Integer> userIds, Supplier<Map<Integer, Boolean>> delete) {
+        UserWriteAheadLog writeAheadLog = this.writeAheadLog;
+        if (writeAheadLog == null) {
+            return delete.get();
+        }
+        long stamp = journalLock.readLock();
+        try {
+            writeAheadLog.appendDelete(userIds.stream().mapToInt(Integer::intValue).toArray());
+            return delete.get();
+        } finally {
+            journalLock.unlockRead(stamp);
+        }
+    }
+
+    private final class LoginAllAction extends RecursiveAction {
+
+        private final List<Credentials> credentials;
+        private final LoginResult[] results;
+        private final int from;
+        private final int to;
+
+        private LoginAllAction(List<Credentials> credentials, LoginResult[] results, int from, int to) {
+            this.credentials = credentials;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LOGIN_BATCH_CHUNK) {
+                loginRange(credentials, results, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new LoginAllAction(credentials, results, from, middle), new LoginAllAction(credentials, results, middle, to));
+        }
     }
 }
@@ -0,0 +1,181 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * Бинарный снимок пользователей, который {@link MappedUserStore} открывает через отображение файла в память.
+ * <pre>
+ * header   (64 байта): magic, version, userCount, idTableSize, usernameTableSize,
+ *                      recordsOffset, idTableOffset, usernameTableOffset, stringsOffset, fileLength, checksum,
+ *                      sortedRowsOffset
+ * records  (24 байта на пользователя): id, usernameOffset, usernameLength, passwordOffset, passwordLength, usernameHash
+ * idTable, usernameTable: хэш-таблицы с открытой адресацией из номеров записей, -1 - пусто
+ * sortedRows: номера записей по возрастанию username, при равных username - по номеру записи
+ * strings: UTF-8 байты username и password
+ * </pre>
+ * Контрольная сумма - CRC32C всего файла, кроме самого поля checksum.
+ */
+public final class UserSnapshot {
+
+    static final int MAGIC = 0x55534E50; // "USNP"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 24;
+    static final int EMPTY = -1;
+
+    static final int USER_COUNT_POSITION = 8;
+    static final int ID_TABLE_SIZE_POSITION = 12;
+    static final int USERNAME_TABLE_SIZE_POSITION = 16;
+    static final int RECORDS_OFFSET_POSITION = 20;
+    static final int ID_TABLE_OFFSET_POSITION = 24;
+    static final int USERNAME_TABLE_OFFSET_POSITION = 28;
+    static final int STRINGS_OFFSET_POSITION = 32;
+    static final int FILE_LENGTH_POSITION = 36;
+    static final int CHECKSUM_POSITION = 40;
+    static final int SORTED_ROWS_OFFSET_POSITION = 48;
+
+    private UserSnapshot() {
+    }
+
+    /**
+     * Записывает снимок во временный файл и атомарно подменяет им {@code file}.
+     */
+    public static void write(Collection<User> users, Path file) throws IOException {
+        int userCount = users.size();
+        int tableSize = tableSizeFor(userCount);
+        if ((long) userCount * (RECORD_SIZE + Integer.BYTES) + 2L * tableSize * Integer.BYTES > Integer.MAX_VALUE) {
+            throw new IOException("Too many users for a single mapped snapshot: " + userCount);
+        }
+        ByteBuffer records = ByteBuffer.allocate(userCount * RECORD_SIZE);
+        int[] ids = new int[userCount];
+        int[] usernameHashes = new int[userCount];
+        String[] usernames = new String[userCount];
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+
+        int row = 0;
+        for (User user : users) {
+            byte[] username = user.getUsername().getBytes(StandardCharsets.UTF_8);
+            byte[] password = user.getPassword().getBytes(StandardCharsets.UTF_8);
+            ids[row] = user.getId();
+            usernameHashes[row] = Arrays.hashCode(username);
+            usernames[row] = user.getUsername();
+            records.putInt(user.getId())
+                    .putInt(strings.size()).putInt(username.length);
+            strings.write(username);
+            records.putInt(strings.size()).putInt(password.length)
+                    .putInt(usernameHashes[row]);
+            strings.write(password);
+            row++;
+        }
+
+        int[] idTable = emptyTable(tableSize);
+        int[] usernameTable = emptyTable(tableSize);
+        for (row = 0; row < userCount; row++) {
+            insert(idTable, ids[row], row);
+            insert(usernameTable, usernameHashes[row], row);
+        }
+
+        // Сортировка устойчивая, поэтому записи с равными username остаются по порядку
+        int[] sortedRows = IntStream.range(0, userCount).boxed()
+                .sorted(Comparator.comparing(sortedRow -> usernames[sortedRow]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        long recordsOffset = HEADER_SIZE;
+        long idTableOffset = recordsOffset + (long) userCount * RECORD_SIZE;
+        long usernameTableOffset = idTableOffset + (long) tableSize * Integer.BYTES;
+        long sortedRowsOffset = usernameTableOffset + (long) tableSize * Integer.BYTES;
+        long stringsOffset = sortedRowsOffset + (long) userCount * Integer.BYTES;
+        long fileLength = stringsOffset + strings.size();
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot is too large to be mapped: " + fileLength + " bytes");
+        }
+
+        ByteBuffer body = ByteBuffer.allocate((int) (fileLength - HEADER_SIZE));
+        body.put(records.flip());
+        body.asIntBuffer().put(idTable);
+        body.position(body.position() + tableSize * Integer.BYTES);
+        body.asIntBuffer().put(usernameTable);
+        body.position(body.position() + tableSize * Integer.BYTES);
+        body.asIntBuffer().put(sortedRows);
+        body.position(body.position() + userCount * Integer.BYTES);
+        body.put(strings.toByteArray());
+        body.flip();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(userCount)
+                .putInt(tableSize)
+                .putInt(tableSize)
+                .putInt((int) recordsOffset)
+                .putInt((int) idTableOffset)
+                .putInt((int) usernameTableOffset)
+                .putInt((int) stringsOffset)
+                .putInt((int) fileLength)
+                .putLong(0)
+                .putInt((int) sortedRowsOffset);
+        header.clear();
+        header.putLong(CHECKSUM_POSITION, checksum(header, body));
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (body.hasRemaining()) {
+                channel.write(body);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static long checksum(ByteBuffer header, ByteBuffer body) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(header.slice(0, CHECKSUM_POSITION));
+        checksum.update(header.slice(CHECKSUM_POSITION + Long.BYTES, HEADER_SIZE - CHECKSUM_POSITION - Long.BYTES));
+        checksum.update(body.duplicate());
+        return checksum.getValue();
+    }
+
+    static int tableSizeFor(int userCount) {
+        return Integer.highestOneBit(Math.max(1, userCount * 2 - 1)) << 1;
+    }
+
+    static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int[] emptyTable(int size) {
+        int[] table = new int[size];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static void insert(int[] table, int hash, int row) {
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        while (table[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = row;
+    }
+}
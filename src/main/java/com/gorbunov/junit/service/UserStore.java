@@ -0,0 +1,44 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Хранилище пользователей, на которое опирается {@link UserService}.
+ */
+public interface UserStore {
+
+    void add(User user);
+
+    List<User> getAll();
+
+    /**
+     * Номер версии содержимого: растет при каждом успешном add. Если он не изменился, то и {@link #getAll()}
+     * с {@link #getAllConvertedById()} отдают тех же пользователей, поэтому построенные на них кэши можно не обновлять.
+     */
+    long version();
+
+    Optional<User> findByUsernameAndPassword(String username, String password);
+
+    Optional<User> findById(int id);
+
+    /**
+     * Пользователи, чей username начинается с {@code prefix}, по возрастанию username, не больше {@code limit}.
+     * Хранилища держат сортированный индекс по username, поэтому начало диапазона находится за O(log n).
+     */
+    List<User> findByUsernamePrefix(String prefix, int limit);
+
+    /**
+     * Страница пользователей по возрастанию username, начиная со следующего после {@code afterUsername}.
+     * Пользователи с одинаковым username всегда попадают на одну страницу.
+     */
+    List<User> listUsers(String afterUsername, int pageSize);
+
+    /**
+     * Неизменяемое представление индекса id -> пользователь, которое поддерживается в актуальном состоянии при добавлении.
+     */
+    Map<Integer, User> getAllConvertedById();
+}
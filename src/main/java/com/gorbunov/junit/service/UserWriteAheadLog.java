@@ -0,0 +1,359 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Журнал изменений пользователей только на дозапись с групповым коммитом.
+ * Запись: [длина int][тип byte][данные][CRC32C типа и данных int].
+ * <p>
+ * {@code append*} возвращается только после fsync своей записи. Фоновый поток сбрасывает на диск сразу
+ * все накопившиеся записи, когда их набралось {@code groupCommitBytes} или прошло {@code groupCommitInterval},
+ * поэтому один fsync подтверждает записи многих потоков. Если подтверждения ждет только один писатель,
+ * интервал не выдерживается: собирать в группу нечего, и запись сбрасывается сразу.
+ */
+public class UserWriteAheadLog implements AutoCloseable {
+
+    private static final byte ADD = 1;
+    private static final byte DELETE = 2;
+    private static final int RECORD_OVERHEAD = Integer.BYTES + 1 + Integer.BYTES;
+
+    private final FileChannel channel;
+    private final WriteAheadLogSettings settings;
+    private final Thread committer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition commitRequested = lock.newCondition();
+    private final Condition committed = lock.newCondition();
+    private ByteBuffer pending;
+    private ByteBuffer spare;
+    private long pendingSince;
+    private long appendedPosition;
+    private long durablePosition;
+    private long syncCount;
+    // сколько потоков сейчас ждут fsync своих записей внутри append
+    private int waitingWriters;
+    private IOException failure;
+    private boolean closed;
+
+    private UserWriteAheadLog(FileChannel channel, long validLength, WriteAheadLogSettings settings) {
+        this.channel = channel;
+        this.settings = settings;
+        this.pending = ByteBuffer.allocate(Math.max(4096, settings.getGroupCommitBytes() * 2));
+        this.spare = ByteBuffer.allocate(pending.capacity());
+        this.appendedPosition = validLength;
+        this.durablePosition = validLength;
+        this.committer = new Thread(this::commitLoop, "user-wal-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    public static UserWriteAheadLog open(Path file) throws IOException {
+        return open(file, WriteAheadLogSettings.builder().build());
+    }
+
+    /**
+     * Открывает журнал на дозапись. Недописанная при падении последняя запись отрезается.
+     */
+    public static UserWriteAheadLog open(Path file, WriteAheadLogSettings settings) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long validLength = scan(channel, user -> {
+            }, id -> {
+            });
+            channel.truncate(validLength);
+            channel.position(validLength);
+            return new UserWriteAheadLog(channel, validLength, settings);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public void appendAdd(User... users) {
+        ByteBuffer records = ByteBuffer.allocate(users.length * 64);
+        for (User user : users) {
+            byte[] username = user.getUsername().getBytes(StandardCharsets.UTF_8);
+            byte[] password = user.getPassword().getBytes(StandardCharsets.UTF_8);
+            int payloadLength = Integer.BYTES * 3 + username.length + password.length;
+            records = ensureRemaining(records, RECORD_OVERHEAD + payloadLength);
+            int start = records.position();
+            records.putInt(1 + payloadLength)
+                    .put(ADD)
+                    .putInt(user.getId())
+                    .putInt(username.length).put(username)
+                    .putInt(password.length).put(password);
+            putChecksum(records, start);
+        }
+        append(records.flip());
+    }
+
+    public void appendDelete(int... userIds) {
+        ByteBuffer records = ByteBuffer.allocate(userIds.length * (RECORD_OVERHEAD + Integer.BYTES));
+        for (int userId : userIds) {
+            int start = records.position();
+            records.putInt(1 + Integer.BYTES)
+                    .put(DELETE)
+                    .putInt(userId);
+            putChecksum(records, start);
+        }
+        append(records.flip());
+    }
+
+    /**
+     * Проигрывает все подтвержденные записи журнала в порядке их добавления.
+     */
+    public void replay(Consumer<User> onAdd, IntConsumer onDelete) throws IOException {
+        lock.lock();
+        try {
+            awaitDurable(appendedPosition);
+            scan(channel, onAdd, onDelete);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Дожидается подтверждения всех записей и очищает журнал. Вызывающий код отвечает за то, чтобы все записи
+     * уже были отражены в снимке и новые append не шли одновременно (см. {@link UserService#checkpoint(Path)}).
+     */
+    public void truncate() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            // после этого pending пуст, а committer не пишет в канал: для записи ему нужен lock
+            awaitDurable(appendedPosition);
+            channel.truncate(0);
+            channel.force(true);
+            appendedPosition = 0;
+            durablePosition = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSyncCount() {
+        lock.lock();
+        try {
+            return syncCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            commitRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void append(ByteBuffer records) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            boolean firstPending = pending.position() == 0;
+            if (firstPending) {
+                pendingSince = System.nanoTime();
+            }
+            pending = ensureRemaining(pending, records.remaining());
+            appendedPosition += records.remaining();
+            pending.put(records);
+            long position = appendedPosition;
+            // Первая запись будит поток, чтобы он начал отсчет интервала, переполнение - чтобы коммитил сразу
+            if (firstPending || pending.position() >= settings.getGroupCommitBytes()) {
+                commitRequested.signal();
+            }
+            waitingWriters++;
+            try {
+                awaitDurable(position);
+            } finally {
+                waitingWriters--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitDurable(long position) {
+        boolean interrupted = false;
+        while (durablePosition < position) {
+            if (failure != null) {
+                throw new UncheckedIOException("Write-ahead log commit failed", failure);
+            }
+            try {
+                committed.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commitLoop() {
+        lock.lock();
+        try {
+            while (true) {
+                if (pending.position() == 0) {
+                    if (closed || failure != null) {
+                        return;
+                    }
+                    commitRequested.awaitUninterruptibly();
+                    continue;
+                }
+                long deadline = pendingSince + settings.getGroupCommitInterval().toNanos();
+                long remaining;
+                // интервал выдерживается, только пока есть кого группировать: одиночная запись ждала бы его впустую
+                while (!closed && waitingWriters > 1 && pending.position() < settings.getGroupCommitBytes()
+                        && (remaining = deadline - System.nanoTime()) > 0) {
+                    commitRequested.await(remaining, TimeUnit.NANOSECONDS);
+                }
+                ByteBuffer batch = pending.flip();
+                pending = spare.clear();
+                spare = batch;
+                long batchEnd = appendedPosition;
+
+                lock.unlock();
+                IOException error = null;
+                try {
+                    while (batch.hasRemaining()) {
+                        channel.write(batch);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                }
+
+                if (error != null) {
+                    failure = error;
+                    committed.signalAll();
+                    return;
+                }
+                syncCount++;
+                durablePosition = batchEnd;
+                committed.signalAll();
+            }
+        } catch (InterruptedException e) {
+            failure = new IOException("Write-ahead log committer was interrupted", e);
+            committed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Возвращает длину корректного префикса журнала
+    private static long scan(FileChannel channel, Consumer<User> onAdd, IntConsumer onDelete) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long position = 0;
+        long validLength = 0;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return validLength;
+            }
+            buffer.flip();
+            int consumed = 0;
+            boolean grown = false;
+            while (buffer.remaining() >= Integer.BYTES) {
+                int start = buffer.position();
+                int length = buffer.getInt(start);
+                if (length < 1 || (long) validLength + RECORD_OVERHEAD - 1 + length > size) {
+                    return validLength;
+                }
+                if (Integer.BYTES + length + Integer.BYTES > buffer.capacity()) {
+                    buffer = ByteBuffer.allocate(Integer.BYTES + length + Integer.BYTES);
+                    grown = true;
+                    break;
+                }
+                if (buffer.remaining() < Integer.BYTES + length + Integer.BYTES) {
+                    break;
+                }
+                CRC32C checksum = new CRC32C();
+                checksum.update(buffer.slice(start + Integer.BYTES, length));
+                if ((int) checksum.getValue() != buffer.getInt(start + Integer.BYTES + length)) {
+                    return validLength;
+                }
+                buffer.position(start + Integer.BYTES);
+                try {
+                    apply(buffer, onAdd, onDelete);
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    return validLength;
+                }
+                buffer.position(start + Integer.BYTES + length + Integer.BYTES);
+                consumed = buffer.position();
+                validLength += Integer.BYTES + length + Integer.BYTES;
+            }
+            if (consumed == 0 && !grown) {
+                // в конце файла остался обрывок короче заголовка записи
+                return validLength;
+            }
+            position += consumed;
+        }
+    }
+
+    private static void apply(ByteBuffer buffer, Consumer<User> onAdd, IntConsumer onDelete) {
+        byte type = buffer.get();
+        int id = buffer.getInt();
+        if (type == ADD) {
+            onAdd.accept(User.of(id, readString(buffer), readString(buffer)));
+        } else if (type == DELETE) {
+            onDelete.accept(id);
+        } else {
+            throw new IllegalArgumentException("Unknown record type: " + type);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putChecksum(ByteBuffer record, int start) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(record.array(), start + Integer.BYTES, record.position() - start - Integer.BYTES);
+        record.putInt((int) checksum.getValue());
+    }
+
+    private static ByteBuffer ensureRemaining(ByteBuffer buffer, int required) {
+        if (buffer.remaining() >= required) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + required));
+        return grown.put(buffer.flip());
+    }
+}
@@ -0,0 +1,146 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+
+import java.util.*;
+
+/**
+ * Поиск по отсортированному индексу username -> пользователи с этим username в порядке добавления.
+ * Поиск начала диапазона занимает O(log n), дальше обходятся только возвращаемые пользователи.
+ * <p>
+ * Хранилища без объектов {@link User} отдают сюда итератор по своему сортированному индексу, начатый с нужного места.
+ */
+final class UsernameIndex {
+
+    private UsernameIndex() {
+    }
+
+    static List<User> findByPrefix(NavigableMap<String, ? extends Collection<User>> index, String prefix, int limit) {
+        return findByPrefix(iterate(index, prefix, true), prefix, limit);
+    }
+
+    static List<User> page(NavigableMap<String, ? extends Collection<User>> index, String afterUsername, int pageSize) {
+        return page(iterate(index, afterUsername, false), pageSize);
+    }
+
+    /**
+     * @param users пользователи по возрастанию username, начиная с первого не меньше {@code prefix}
+     */
+    static List<User> findByPrefix(Iterator<User> users, String prefix, int limit) {
+        List<User> found = new ArrayList<>(Math.min(limit, 64));
+        while (found.size() < limit && users.hasNext()) {
+            User user = users.next();
+            if (!user.getUsername().startsWith(prefix)) {
+                break;
+            }
+            found.add(user);
+        }
+        return found;
+    }
+
+    /**
+     * Пользователи с username строго больше {@code afterUsername}: {@code users} должен начинаться с первого из них.
+     * Пользователи с одинаковым username не разрываются между страницами, иначе следующая страница пропустила бы их хвост:
+     * если группа не помещается, страница заканчивается раньше, а группа больше pageSize возвращается целиком.
+     */
+    static List<User> page(Iterator<User> users, int pageSize) {
+        List<User> page = new ArrayList<>(Math.min(pageSize, 64));
+        List<User> group = new ArrayList<>();
+        while (users.hasNext()) {
+            User user = users.next();
+            if (!group.isEmpty() && !group.get(0).getUsername().equals(user.getUsername())) {
+                if (!page.isEmpty() && page.size() + group.size() > pageSize) {
+                    return page;
+                }
+                page.addAll(group);
+                group.clear();
+                if (page.size() >= pageSize) {
+                    return page;
+                }
+            }
+            group.add(user);
+        }
+        if (!group.isEmpty() && (page.isEmpty() || page.size() + group.size() <= pageSize)) {
+            page.addAll(group);
+        }
+        return page;
+    }
+
+    /**
+     * Пользователи индекса начиная с {@code from} ({@code null} - с начала).
+     */
+    static Iterator<User> iterate(NavigableMap<String, ? extends Collection<User>> index, String from, boolean inclusive) {
+        Iterator<? extends Collection<User>> groups = (from == null ? index : index.tailMap(from, inclusive)).values().iterator();
+        return new Iterator<>() {
+            private Iterator<User> group = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!group.hasNext() && groups.hasNext()) {
+                    group = groups.next().iterator();
+                }
+                return group.hasNext();
+            }
+
+            @Override
+            public User next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return group.next();
+            }
+        };
+    }
+
+    /**
+     * Слияние отсортированных по username итераторов. При равных username первым идет пользователь из более раннего источника.
+     */
+    static Iterator<User> merge(List<Iterator<User>> sources) {
+        User[] heads = new User[sources.size()];
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = sources.get(i).hasNext() ? sources.get(i).next() : null;
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                for (User head : heads) {
+                    if (head != null) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public User next() {
+                int min = -1;
+                for (int i = 0; i < heads.length; i++) {
+                    if (heads[i] != null && (min == -1 || heads[i].getUsername().compareTo(heads[min].getUsername()) < 0)) {
+                        min = i;
+                    }
+                }
+                if (min == -1) {
+                    throw new NoSuchElementException();
+                }
+                User user = heads[min];
+                heads[min] = sources.get(min).hasNext() ? sources.get(min).next() : null;
+                return user;
+            }
+        };
+    }
+
+    /**
+     * Сравнивает первые различающиеся байты двух UTF-8 строк так, чтобы порядок совпадал с {@link String#compareTo}.
+     * Порядок UTF-8 байт - это порядок кодовых точек, а String сравнивает UTF-16: в нем символы выше U+FFFF
+     * (суррогатные пары, UTF-8 с 0xF0) меньше символов U+E000..U+FFFF (UTF-8 с 0xEE и 0xEF).
+     */
+    static int compareUtf8(byte left, byte right) {
+        int l = left & 0xFF;
+        int r = right & 0xFF;
+        if (l >= 0xEE && r >= 0xEE) {
+            l = l <= 0xEF ? l + 0x10 : l;
+            r = r <= 0xEF ? r + 0x10 : r;
+        }
+        return Integer.compare(l, r);
+    }
+}
@@ -0,0 +1,17 @@
+package com.gorbunov.junit.service;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+@Value
+@Builder
+public class WriteAheadLogSettings {
+    // fsync выполняется, как только накопилось столько байт...
+    @Builder.Default
+    int groupCommitBytes = 64 * 1024;
+    // ...или прошло столько времени с первой записи, ожидающей fsync
+    @Builder.Default
+    Duration groupCommitInterval = Duration.ofMillis(2);
+}
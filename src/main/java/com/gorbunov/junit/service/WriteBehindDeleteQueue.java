@@ -0,0 +1,173 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dao.UserDao;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Отложенное удаление: id накапливаются в очереди, повторы схлопываются, а в DAO уходят пачками через
+ * {@link UserDao#deleteAll(Collection, int)} по размеру пачки или по таймеру.
+ * Пачка, которую не удалось удалить, возвращается в очередь. После close ее уже некому повторить, поэтому close
+ * делает несколько попыток и, если все они неудачны, бросает исключение со списком неудаленных id.
+ */
+public class WriteBehindDeleteQueue implements AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(WriteBehindDeleteQueue.class.getName());
+
+    private final UserDao userDao;
+    private final WriteBehindSettings settings;
+    private final ScheduledExecutorService flusher;
+    private final Object pendingLock = new Object();
+    // сброс выполняется в одном потоке за раз, чтобы пачки уходили в DAO по порядку
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private Set<Integer> pending = new LinkedHashSet<>();
+    private boolean flushScheduled;
+    // меняется и читается только под pendingLock: после close ни один id не попадет в pending мимо последнего flush
+    private boolean closed;
+
+    public WriteBehindDeleteQueue(UserDao userDao, WriteBehindSettings settings) {
+        this.userDao = userDao;
+        this.settings = settings;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-delete-queue");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalNanos = settings.getFlushInterval().toNanos();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void enqueue(int userId) {
+        if (!offer(userId)) {
+            throw new IllegalStateException("Write-behind delete queue is closed");
+        }
+    }
+
+    /**
+     * То же, что {@link #enqueue(int)}, но для закрытой очереди возвращает false вместо исключения.
+     */
+    public boolean offer(int userId) {
+        synchronized (pendingLock) {
+            if (closed) {
+                return false;
+            }
+            // пока closed == false, close еще не остановил flusher, поэтому execute не отклонит задачу
+            if (pending.add(userId) && pending.size() >= settings.getBatchSize() && !flushScheduled) {
+                flushScheduled = true;
+                flusher.execute(this::flushQuietly);
+            }
+            return true;
+        }
+    }
+
+    public int getQueueDepth() {
+        synchronized (pendingLock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * id, которые еще не отправлены в DAO. После неудачного close - те, что так и не удалось удалить.
+     */
+    public List<Integer> getPendingIds() {
+        synchronized (pendingLock) {
+            return List.copyOf(pending);
+        }
+    }
+
+    /**
+     * Синхронно отправляет в DAO все накопленные id.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            while (true) {
+                List<Integer> batch;
+                int queueDepth;
+                synchronized (pendingLock) {
+                    flushScheduled = false;
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    batch = takeBatch();
+                    queueDepth = pending.size();
+                }
+                try {
+                    userDao.deleteAll(batch, settings.getBatchSize());
+                } catch (RuntimeException e) {
+                    synchronized (pendingLock) {
+                        Set<Integer> requeued = new LinkedHashSet<>(batch);
+                        requeued.addAll(pending);
+                        pending = requeued;
+                    }
+                    throw e;
+                }
+                settings.getListener().onFlush(batch.size(), queueDepth);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (pendingLock) {
+            closed = true;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // забирает все, что успели поставить в очередь до closed = true, включая то, что не успел сбросить flusher
+        for (int attempt = 1; ; attempt++) {
+            try {
+                flush();
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= settings.getCloseFlushAttempts()) {
+                    throw new IllegalStateException("Failed to delete user ids " + getPendingIds()
+                            + " after " + attempt + " attempts on close", e);
+                }
+                LOG.log(System.Logger.Level.WARNING, "Failed to flush queued deletes on close, attempt " + attempt, e);
+                if (!pause(settings.getCloseRetryDelay())) {
+                    throw new IllegalStateException("Interrupted while deleting user ids " + getPendingIds() + " on close", e);
+                }
+            }
+        }
+    }
+
+    private static boolean pause(Duration delay) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay.toNanos());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private List<Integer> takeBatch() {
+        List<Integer> batch = new ArrayList<>(Math.min(pending.size(), settings.getBatchSize()));
+        Iterator<Integer> ids = pending.iterator();
+        while (ids.hasNext() && batch.size() < settings.getBatchSize()) {
+            batch.add(ids.next());
+            ids.remove();
+        }
+        return batch;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOG.log(System.Logger.Level.WARNING, "Failed to flush queued deletes, they will be retried", e);
+        }
+    }
+}
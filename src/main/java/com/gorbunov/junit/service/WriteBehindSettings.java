@@ -0,0 +1,32 @@
+package com.gorbunov.junit.service;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+@Value
+@Builder
+public class WriteBehindSettings {
+    // очередь сбрасывается, как только в ней набралось столько разных id...
+    @Builder.Default
+    int batchSize = 500;
+    // ...или прошло столько времени с прошлого сброса
+    @Builder.Default
+    Duration flushInterval = Duration.ofMillis(100);
+    // сколько раз close пытается сбросить остаток очереди, прежде чем сообщить о неудаленных id
+    @Builder.Default
+    int closeFlushAttempts = 3;
+    // пауза между такими попытками
+    @Builder.Default
+    Duration closeRetryDelay = Duration.ofMillis(100);
+    @Builder.Default
+    Listener listener = (batchSize, queueDepth) -> {
+    };
+
+    @FunctionalInterface
+    public interface Listener {
+        // вызывается после каждой пачки, отправленной в DAO; queueDepth - сколько id осталось в очереди
+        void onFlush(int batchSize, int queueDepth);
+    }
+}
@@ -0,0 +1,90 @@
+package com.gorbunov.junit.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Выполняет блокирующие задачи асинхронно с ограничением на число одновременно выполняющихся задач и таймаутом.
+ * По умолчанию задачи запускаются на виртуальных потоках (Java 21+), на более старых JDK - на пуле из
+ * {@link BoundedAsyncExecutorSettings#getMaxPlatformThreads()} daemon-потоков. Задачи сверх числа потоков ждут в очереди,
+ * длина которой ограничена тем же maxInFlight.
+ */
+public class BoundedAsyncExecutor implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final BoundedAsyncExecutorSettings settings;
+    private final Semaphore inFlight;
+
+    public BoundedAsyncExecutor(BoundedAsyncExecutorSettings settings) {
+        this(defaultExecutor(settings.getMaxPlatformThreads()), settings);
+    }
+
+    public BoundedAsyncExecutor(ExecutorService executor, BoundedAsyncExecutorSettings settings) {
+        this.executor = executor;
+        this.settings = settings;
+        this.inFlight = new Semaphore(settings.getMaxInFlight());
+    }
+
+    /**
+     * Никогда не блокирует вызывающий поток: если свободного места нет, сразу возвращает future,
+     * завершенный с {@link RejectedExecutionException}.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        if (!inFlight.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "More than " + settings.getMaxInFlight() + " tasks in flight"));
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(task.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    // место освобождается, только когда задача действительно закончилась, а не по таймауту
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            result.completeExceptionally(e);
+        }
+        return result.orTimeout(settings.getTimeout().toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public int getInFlight() {
+        return settings.getMaxInFlight() - inFlight.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * @param maxPlatformThreads сколько потоков создать, если виртуальные потоки недоступны
+     */
+    public static ExecutorService defaultExecutor(int maxPlatformThreads) {
+        if (maxPlatformThreads < 1) {
+            throw new IllegalArgumentException("Max platform threads must be positive: " + maxPlatformThreads);
+        }
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(maxPlatformThreads, maxPlatformThreads,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "async-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            // простаивающий пул не держит потоки
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.gorbunov.junit.util;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+@Value
+@Builder
+public class BoundedAsyncExecutorSettings {
+    // сколько задач может выполняться одновременно
+    @Builder.Default
+    int maxInFlight = 1_000;
+    // размер пула потоков, если виртуальные потоки недоступны. Остальные задачи ждут в очереди
+    @Builder.Default
+    int maxPlatformThreads = 10;
+    // после этого времени future завершается с TimeoutException
+    @Builder.Default
+    Duration timeout = Duration.ofSeconds(30);
+}
@@ -0,0 +1,185 @@
+package com.gorbunov.junit.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Хэш-таблица с открытой адресацией (линейное пробирование) для ключей {@code int}.
+ * Ключи хранятся в примитивном массиве, поэтому в отличие от {@code HashMap<Integer, V>} нет ни боксинга ключей,
+ * ни объекта-узла на каждую запись. Значения {@code null} не допускаются: пустая ячейка - это ячейка с {@code null}.
+ * Не потокобезопасна.
+ */
+public class IntObjectMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int resizeThreshold;
+
+    public IntObjectMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntObjectMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return values[indexOf(key)] != null;
+    }
+
+    public V get(int key) {
+        return valueAt(indexOf(key));
+    }
+
+    public V getOrDefault(int key, V defaultValue) {
+        V value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public V put(int key, V value) {
+        Objects.requireNonNull(value, "value");
+        int index = indexOf(key);
+        V previous = valueAt(index);
+        if (previous == null) {
+            keys[index] = key;
+            if (++size > resizeThreshold) {
+                values[index] = value;
+                resize(keys.length << 1);
+                return null;
+            }
+        }
+        values[index] = value;
+        return previous;
+    }
+
+    public V remove(int key) {
+        int mask = keys.length - 1;
+        int index = indexOf(key);
+        V previous = valueAt(index);
+        if (previous == null) {
+            return null;
+        }
+        values[index] = null;
+        size--;
+        // Обратный сдвиг вместо "надгробий": элементы цепочки за удаленным переносятся ближе к своему исходному слоту
+        int free = index;
+        for (int next = (index + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                values[next] = null;
+                free = next;
+            }
+        }
+        return previous;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Итерация без создания объектов на каждую запись. Изменять карту во время обхода нельзя.
+     */
+    public Cursor<V> cursor() {
+        return new Cursor<>(this);
+    }
+
+    private int indexOf(int key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (values[index] != null && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int) Math.ceil(expectedSize / LOAD_FACTOR)) - 1) << 1;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Too large expected size: " + expectedSize);
+        }
+        return capacity;
+    }
+
+    // Перемешивание нужно, так как id обычно идут подряд и без него образуют длинные кластеры
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public static final class Cursor<V> {
+
+        private final IntObjectMap<V> map;
+        private int index = -1;
+
+        private Cursor(IntObjectMap<V> map) {
+            this.map = map;
+        }
+
+        public boolean advance() {
+            Object[] values = map.values;
+            while (++index < values.length) {
+                if (values[index] != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int key() {
+            checkPosition();
+            return map.keys[index];
+        }
+
+        public V value() {
+            checkPosition();
+            return map.valueAt(index);
+        }
+
+        private void checkPosition() {
+            if (index < 0 || index >= map.values.length || map.values[index] == null) {
+                throw new NoSuchElementException();
+            }
+        }
+    }
+}
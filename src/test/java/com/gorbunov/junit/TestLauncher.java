@@ -1,5 +1,6 @@
 package com.gorbunov.junit;
 
+import com.gorbunov.junit.listener.TestTimingListener;
 import org.junit.platform.engine.discovery.DiscoverySelectors;
 import org.junit.platform.launcher.Launcher;
 import org.junit.platform.launcher.LauncherDiscoveryRequest;
@@ -9,12 +10,20 @@ import org.junit.platform.launcher.core.LauncherFactory;
 import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
 
 import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.time.Duration;
 
 public class TestLauncher {
 
+    // -Dtiming.report=путь к JSON-отчету, -Dtiming.top=сколько самых долгих тестов вывести,
+    // -Dtiming.budget=ISO-8601 длительность вроде PT0.5S: если какой-то тест шел дольше, процесс завершится с кодом 1
     public static void main(String[] args) {
         Launcher launcher = LauncherFactory.create();
         SummaryGeneratingListener summaryGeneratingListener = new SummaryGeneratingListener();
+        String budget = System.getProperty("timing.budget");
+        TestTimingListener timingListener = new TestTimingListener(
+                Path.of(System.getProperty("timing.report", "build/reports/test-timing/timing.json")),
+                budget == null ? null : Duration.parse(budget));
 //        launcher.registerLauncherDiscoveryListeners(); // Настройка лисенеров
 //        launcher.registerTestExecutionListeners(summaryGeneratingListener); // Настройка лисенеров
 
@@ -27,10 +36,14 @@ public class TestLauncher {
                 )
 //                .listeners() // так же можно настроить лиссенеры
                 .build();
-        launcher.execute(request, summaryGeneratingListener);
+        launcher.execute(request, summaryGeneratingListener, timingListener);
 
         try (PrintWriter printWriter = new PrintWriter(System.out)) {
             summaryGeneratingListener.getSummary().printTo(printWriter);
+            timingListener.printSlowest(printWriter, Integer.getInteger("timing.top", 10));
+        }
+        if (!timingListener.getBudgetViolations().isEmpty()) {
+            System.exit(1);
         }
 
     }
@@ -0,0 +1,101 @@
+package com.gorbunov.junit.dao;
+
+import com.gorbunov.junit.TestBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConnectionPoolTest extends TestBase {
+
+    private static final String URL = "jdbc:h2:mem:connection-pool-test;DB_CLOSE_DELAY=-1";
+
+    private ConnectionPool connectionPool;
+
+    @AfterEach
+    void closePool() {
+        connectionPool.close();
+    }
+
+    @Test
+    void returnedConnectionIsReused() throws SQLException {
+        connectionPool = pool(ConnectionPoolSettings.builder().url(URL).minSize(1).maxSize(2));
+
+        Connection first = connectionPool.getConnection();
+        Connection physical = first.unwrap(Connection.class);
+        first.close();
+        try (Connection second = connectionPool.getConnection()) {
+            assertThat(second.unwrap(Connection.class)).isSameAs(physical);
+        }
+
+        PoolStats stats = connectionPool.getStats();
+        assertThat(stats.getHits()).isEqualTo(2);
+        assertThat(stats.getMisses()).isZero();
+        assertThat(stats.getIdle()).isEqualTo(1);
+        assertThat(stats.getActive()).isZero();
+        assertThat(first.isClosed()).isTrue();
+    }
+
+    @Test
+    void waitsForReleasedConnectionAndTimesOutWhenExhausted() throws Exception {
+        connectionPool = pool(ConnectionPoolSettings.builder().url(URL).maxSize(1).acquireTimeout(Duration.ofMillis(100)));
+
+        Connection connection = connectionPool.getConnection();
+        assertThrows(SQLTimeoutException.class, connectionPool::getConnection);
+
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try (Connection next = connectionPool.getConnection()) {
+                return next.isValid(1);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(20);
+        connection.close();
+
+        assertThat(waiter.get(1, TimeUnit.SECONDS)).isTrue();
+        PoolStats stats = connectionPool.getStats();
+        assertThat(stats.getTimeouts()).isEqualTo(1);
+        assertThat(stats.getWaits()).isEqualTo(2);
+        assertThat(stats.getTotalWaitTime()).isGreaterThanOrEqualTo(Duration.ofMillis(100));
+    }
+
+    @Test
+    void brokenIdleConnectionIsReplaced() throws SQLException {
+        connectionPool = pool(ConnectionPoolSettings.builder().url(URL).minSize(1).idleValidationInterval(Duration.ZERO));
+
+        Connection connection = connectionPool.getConnection();
+        Connection physical = connection.unwrap(Connection.class);
+        physical.close();
+        connection.close();
+
+        try (Connection replacement = connectionPool.getConnection()) {
+            assertThat(replacement.unwrap(Connection.class)).isNotSameAs(physical);
+            assertThat(replacement.isValid(1)).isTrue();
+        }
+        assertThat(connectionPool.getStats().getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void notReturnedConnectionIsReportedAsLeak() throws Exception {
+        connectionPool = pool(ConnectionPoolSettings.builder().url(URL).leakDetectionThreshold(Duration.ofMillis(50)));
+
+        Connection connection = connectionPool.getConnection();
+        Thread.sleep(200);
+
+        assertThat(connectionPool.getStats().getLeaks()).isEqualTo(1);
+        connection.close();
+    }
+
+    private static ConnectionPool pool(ConnectionPoolSettings.ConnectionPoolSettingsBuilder settings) {
+        return new ConnectionPool(settings.username("sa").password("").build());
+    }
+}
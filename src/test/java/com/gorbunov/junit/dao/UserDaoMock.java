@@ -1,18 +1,20 @@
 package com.gorbunov.junit.dao;
 
+import com.gorbunov.junit.util.IntObjectMap;
 import org.mockito.stubbing.Answer1;
 
-import java.util.HashMap;
-import java.util.Map;
-
 // Пример как создаются моки в Mockito
 public class UserDaoMock extends UserDao{
 
-    private Map<Integer, Boolean> answers = new HashMap<>();
+    private IntObjectMap<Boolean> answers = new IntObjectMap<>();
 //    private Answer1<Integer, Boolean> answers1; // Этот объект использует Mockito вместо Map.
 
     @Override
     public boolean delete(Integer userId) {
+        // IntObjectMap принимает int: null распаковался бы в NullPointerException
+        if (userId == null) {
+            return false;
+        }
         return answers.getOrDefault(userId, false);
     }
 }
@@ -1,13 +1,12 @@
 package com.gorbunov.junit.dao;
 
-import java.util.HashMap;
-import java.util.Map;
+import com.gorbunov.junit.util.IntObjectMap;
 
 // Похож на Mock. Но содержит внутри оригинальный объект, и в случае отсутствия заданного ответа вызывает реальный метод.
 public class UserDaoSpy extends UserDao {
 
     private final UserDao userDao;
-    private Map<Integer, Boolean> answers = new HashMap<>();
+    private IntObjectMap<Boolean> answers = new IntObjectMap<>();
 
     public UserDaoSpy(UserDao userDao) {
         this.userDao = userDao;
@@ -15,6 +14,8 @@ public class UserDaoSpy extends UserDao {
 
     @Override
     public boolean delete(Integer userId) {
-        return answers.getOrDefault(userId, userDao.delete(userId));
+        // реальный метод вызывается, только если ответа нет: иначе spy удалял бы пользователя и при заданном ответе
+        Boolean answer = userId == null ? null : answers.get(userId);
+        return answer != null ? answer : userDao.delete(userId);
     }
 }
@@ -0,0 +1,125 @@
+package com.gorbunov.junit.dao;
+
+import com.gorbunov.junit.TestBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UserDaoTest extends TestBase {
+
+    private static final String URL = "jdbc:h2:mem:user-dao-test;DB_CLOSE_DELAY=-1";
+
+    private ConnectionPool connectionPool;
+    private UserDao userDao;
+
+    @BeforeEach
+    void createUsers() throws SQLException {
+        connectionPool = new ConnectionPool(ConnectionPoolSettings.builder().url(URL).username("sa").password("").build());
+        userDao = new UserDao(connectionPool);
+        execute("CREATE TABLE users (id INT PRIMARY KEY, username VARCHAR(64), password VARCHAR(64))");
+        for (int id = 1; id <= 10; id++) {
+            execute("INSERT INTO users VALUES (" + id + ", 'user" + id + "', 'password" + id + "')");
+        }
+    }
+
+    @AfterEach
+    void dropUsers() throws SQLException {
+        execute("DROP TABLE users");
+        userDao.close();
+    }
+
+    @Test
+    void deleteReportsWhetherUserExisted() throws SQLException {
+        assertThat(userDao.delete(1)).isTrue();
+        assertThat(userDao.delete(1)).isFalse();
+        assertThat(countUsers()).isEqualTo(9);
+    }
+
+    @Test
+    void handWrittenMockAndSpyAcceptNullId() throws SQLException {
+        assertThat(new UserDaoMock().delete(null)).isFalse();
+        assertThat(new UserDaoMock().delete(1)).isFalse();
+
+        assertThat(new UserDaoSpy(userDao).delete(1)).isTrue();
+        assertThat(countUsers()).isEqualTo(9);
+        // для null ответа нет, поэтому вызов уходит в оборачиваемый DAO
+        UserDao delegate = Mockito.mock(UserDao.class);
+        Mockito.doReturn(true).when(delegate).delete((Integer) null);
+        assertThat(new UserDaoSpy(delegate).delete(null)).isTrue();
+    }
+
+    @Test
+    void deleteAllRemovesUsersInBatchesWithinOneConnection() throws SQLException {
+        long borrowedBefore = borrowedConnections();
+        Map<Integer, Boolean> results = userDao.deleteAll(List.of(1, 2, 3, 42, 2, 5), 2);
+
+        assertThat(results).containsExactly(
+                entry(1, true),
+                entry(2, true),
+                entry(3, true),
+                entry(42, false),
+                entry(5, true)
+        );
+        assertThat(borrowedConnections() - borrowedBefore).isEqualTo(1);
+        assertThat(countUsers()).isEqualTo(6);
+    }
+
+    @Test
+    void deleteAllRollsBackWholeTransactionOnFailure() throws SQLException {
+        execute("CREATE TABLE user_roles (user_id INT REFERENCES users(id))");
+        execute("INSERT INTO user_roles VALUES (4)");
+        try {
+            assertThrows(SQLException.class, () -> userDao.deleteAll(List.of(1, 2, 3, 4), 2));
+            assertThat(countUsers()).isEqualTo(10);
+        } finally {
+            execute("DROP TABLE user_roles");
+        }
+    }
+
+    private long borrowedConnections() {
+        PoolStats stats = userDao.getPoolStats();
+        return stats.getHits() + stats.getMisses();
+    }
+
+    @Test
+    void deleteAsyncRunsManyDeletesConcurrently() throws SQLException {
+        List<CompletableFuture<Boolean>> results = IntStream.rangeClosed(1, 200)
+                .mapToObj(userDao::deleteAsync)
+                .collect(Collectors.toList());
+
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+        assertThat(results.stream().filter(CompletableFuture::join).count()).isEqualTo(10);
+        assertThat(countUsers()).isZero();
+    }
+
+    private int countUsers() throws SQLException {
+        try (Connection connection = connectionPool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM users")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection connection = connectionPool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
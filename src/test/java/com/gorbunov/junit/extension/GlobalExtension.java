@@ -1,5 +1,6 @@
 package com.gorbunov.junit.extension;
 
+import com.gorbunov.junit.listener.TestTimingListener;
 import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
 import org.junit.jupiter.api.extension.BeforeAllCallback;
 import org.junit.jupiter.api.extension.ExtensionContext;
@@ -8,11 +9,21 @@ public class GlobalExtension implements BeforeAllCallback, AfterTestExecutionCal
 
     @Override
     public void afterTestExecution(ExtensionContext context) throws Exception {
+        long start = System.nanoTime();
         System.out.println("After test execution callback");
+        publishTiming(context, "afterTestExecution", start);
     }
 
     @Override
     public void beforeAll(ExtensionContext context) throws Exception {
+        long start = System.nanoTime();
         System.out.println("Before all callback");
+        publishTiming(context, "beforeAll", start);
+    }
+
+    // Время callback'а попадает в отчет TestTimingListener, если он подключен. Иначе report entry просто игнорируется
+    private static void publishTiming(ExtensionContext context, String callback, long start) {
+        context.publishReportEntry(TestTimingListener.EXTENSION_ENTRY_PREFIX + "GlobalExtension." + callback,
+                String.valueOf(System.nanoTime() - start));
     }
 }
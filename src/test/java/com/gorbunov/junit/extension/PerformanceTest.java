@@ -0,0 +1,38 @@
+package com.gorbunov.junit.extension;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Тест-бенчмарк: тело теста выполняется {@link #warmup()} раз для прогрева JIT, затем {@link #iterations()} раз с замером
+ * каждого вызова. Тест падает, если перцентили или число выделенных байт на вызов превышают заданные пределы.
+ * <p>
+ * Тело вызывается многократно на одном экземпляре теста, а @BeforeEach и @AfterEach - один раз,
+ * поэтому тело не должно менять состояние, которое само же проверяет.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Test
+@ExtendWith(PerformanceTestExtension.class)
+public @interface PerformanceTest {
+
+    int warmup() default 10_000;
+
+    int iterations() default 10_000;
+
+    // пределы в единицах unit(), Long.MAX_VALUE - без проверки
+    long p50Max() default Long.MAX_VALUE;
+
+    long p99Max() default Long.MAX_VALUE;
+
+    TimeUnit unit() default TimeUnit.MICROSECONDS;
+
+    // среднее число байт, выделенных текущим потоком за вызов; -1 - без проверки
+    long maxBytesPerInvocation() default -1;
+}
@@ -0,0 +1,110 @@
+package com.gorbunov.junit.extension;
+
+import com.gorbunov.junit.listener.TestTimingListener;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.InvocationInterceptor;
+import org.junit.jupiter.api.extension.ReflectiveInvocationContext;
+import org.opentest4j.AssertionFailedError;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Выполняет метод с {@link PerformanceTest} в цикле, считает перцентили задержки и выделенную память
+ * через {@link com.sun.management.ThreadMXBean} и публикует их как report entry теста.
+ */
+public class PerformanceTestExtension implements InvocationInterceptor {
+
+    @Override
+    public void interceptTestMethod(Invocation<Void> invocation,
+                                    ReflectiveInvocationContext<Method> invocationContext,
+                                    ExtensionContext extensionContext) throws Throwable {
+        Method method = invocationContext.getExecutable();
+        PerformanceTest settings = method.getAnnotation(PerformanceTest.class);
+        Object target = invocationContext.getTarget().orElse(null);
+        Object[] arguments = invocationContext.getArguments().toArray();
+        method.setAccessible(true);
+
+        long warmupStart = System.nanoTime();
+        for (int i = 0; i < settings.warmup(); i++) {
+            invoke(method, target, arguments);
+        }
+        // прогрев - основная цена такого теста, TestTimingListener покажет ее отдельно от замеров
+        extensionContext.publishReportEntry(TestTimingListener.EXTENSION_ENTRY_PREFIX + "PerformanceTestExtension.warmup",
+                String.valueOf(System.nanoTime() - warmupStart));
+
+        long[] samples = new long[settings.iterations()];
+        com.sun.management.ThreadMXBean threadMXBean = allocationCounter();
+        long allocatedBefore = threadMXBean != null ? threadMXBean.getCurrentThreadAllocatedBytes() : 0;
+        for (int i = 0; i < samples.length; i++) {
+            long start = System.nanoTime();
+            invoke(method, target, arguments);
+            samples[i] = System.nanoTime() - start;
+        }
+        long allocated = threadMXBean != null ? threadMXBean.getCurrentThreadAllocatedBytes() - allocatedBefore : -1;
+        // тело уже выполнено нужное число раз, повторно его запускать не нужно
+        invocation.skip();
+
+        Arrays.sort(samples);
+        long p50 = percentile(samples, 0.5);
+        long p99 = percentile(samples, 0.99);
+        long bytesPerInvocation = allocated < 0 ? -1 : allocated / Math.max(1, samples.length);
+
+        Map<String, String> report = new LinkedHashMap<>();
+        report.put("performance.iterations", String.valueOf(samples.length));
+        report.put("performance.p50Nanos", String.valueOf(p50));
+        report.put("performance.p99Nanos", String.valueOf(p99));
+        report.put("performance.p999Nanos", String.valueOf(percentile(samples, 0.999)));
+        report.put("performance.maxNanos", String.valueOf(samples.length == 0 ? 0 : samples[samples.length - 1]));
+        report.put("performance.bytesPerInvocation", String.valueOf(bytesPerInvocation));
+        extensionContext.publishReportEntry(report);
+
+        check("p50", p50, settings.unit().toNanos(settings.p50Max()), "ns");
+        check("p99", p99, settings.unit().toNanos(settings.p99Max()), "ns");
+        if (settings.maxBytesPerInvocation() >= 0 && bytesPerInvocation >= 0) {
+            check("allocation", bytesPerInvocation, settings.maxBytesPerInvocation(), "bytes per invocation");
+        }
+    }
+
+    private static void invoke(Method method, Object target, Object[] arguments) throws Throwable {
+        try {
+            method.invoke(target, arguments);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    // null, если JVM не умеет считать память, выделенную потоком
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadMXBean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        if (!threadMXBean.isThreadAllocatedMemoryEnabled()) {
+            threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        return threadMXBean;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private static void check(String metric, long actual, long limit, String unit) {
+        if (actual > limit) {
+            throw new AssertionFailedError(String.format("%s is %d %s, limit is %d %s", metric, actual, unit, limit, unit),
+                    limit, actual);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.gorbunov.junit.extension;
 
+import com.gorbunov.junit.listener.TestTimingListener;
 import com.gorbunov.junit.service.UserService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtensionContext;
@@ -12,6 +13,7 @@ public class PostProcessingExtension implements TestInstancePostProcessor {
     // Так работает Spring
     @Override
     public void postProcessTestInstance(Object testInstance, ExtensionContext context) throws Exception {
+        long start = System.nanoTime();
         System.out.println("Post processing extension");
         Field[] fields = testInstance.getClass().getDeclaredFields();
         for (Field field : fields) {
@@ -19,5 +21,7 @@ public class PostProcessingExtension implements TestInstancePostProcessor {
                 field.set(testInstance, new UserService(null));
             }
         }
+        context.publishReportEntry(TestTimingListener.EXTENSION_ENTRY_PREFIX + "PostProcessingExtension.postProcessTestInstance",
+                String.valueOf(System.nanoTime() - start));
     }
 }
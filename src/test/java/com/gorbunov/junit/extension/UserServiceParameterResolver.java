@@ -16,7 +16,15 @@ public class UserServiceParameterResolver implements ParameterResolver {
 
     @Override
     public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) throws ParameterResolutionException {
-        ExtensionContext.Store store = extensionContext.getStore(ExtensionContext.Namespace.create(extensionContext.getTestMethod()));
-        return store.getOrComputeIfAbsent(UserService.class, it -> new UserService(new UserDao()));
+        // Namespace по uniqueId, а не по методу: при параллельном запуске повторы одного метода (@RepeatedTest,
+        // @ParameterizedTest) идут одновременно, и каждому нужен свой UserService
+        ExtensionContext.Store store = extensionContext.getStore(
+                ExtensionContext.Namespace.create(UserServiceParameterResolver.class, extensionContext.getUniqueId()));
+        return store.getOrComputeIfAbsent(UserService.class, it -> {
+            UserDao userDao = new UserDao();
+            // store закроет DAO вместе с контекстом теста
+            store.put(UserDao.class, (ExtensionContext.Store.CloseableResource) userDao::close);
+            return new UserService(userDao);
+        });
     }
 }
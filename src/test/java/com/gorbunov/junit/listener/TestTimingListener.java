@@ -0,0 +1,224 @@
+package com.gorbunov.junit.listener;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.TestSource;
+import org.junit.platform.engine.reporting.ReportEntry;
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Замеряет время каждого теста и контейнера (класса, вложенного класса, параметризованного теста).
+ * Расширения публикуют время своих callback'ов через report entry с ключом {@value #EXTENSION_ENTRY_PREFIX}...
+ * и значением в наносекундах, оно попадает в запись того теста или контейнера, где было опубликовано.
+ * <p>
+ * Listener можно использовать при параллельном запуске: все коллекции потокобезопасны.
+ */
+public class TestTimingListener implements TestExecutionListener {
+
+    public static final String EXTENSION_ENTRY_PREFIX = "timing.extension.";
+
+    private final Path reportFile;
+    private final Duration budget;
+
+    private final Map<String, Long> startTimes = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Long>> extensionNanos = new ConcurrentHashMap<>();
+    private final Queue<Timing> timings = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param reportFile куда записать JSON-отчет, {@code null} - не записывать
+     * @param budget     сколько может длиться один тест, {@code null} - без ограничения
+     */
+    public TestTimingListener(Path reportFile, Duration budget) {
+        this.reportFile = reportFile;
+        this.budget = budget;
+    }
+
+    @Override
+    public void executionStarted(TestIdentifier testIdentifier) {
+        startTimes.put(testIdentifier.getUniqueId(), System.nanoTime());
+    }
+
+    @Override
+    public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        Long start = startTimes.remove(testIdentifier.getUniqueId());
+        if (start == null) {
+            return;
+        }
+        Map<String, Long> extensions = extensionNanos.remove(testIdentifier.getUniqueId());
+        timings.add(new Timing(
+                testIdentifier,
+                Duration.ofNanos(System.nanoTime() - start),
+                testExecutionResult.getStatus(),
+                extensions == null ? Map.of() : new TreeMap<>(extensions)));
+    }
+
+    @Override
+    public void reportingEntryPublished(TestIdentifier testIdentifier, ReportEntry entry) {
+        entry.getKeyValuePairs().forEach((key, value) -> {
+            if (key.startsWith(EXTENSION_ENTRY_PREFIX)) {
+                extensionNanos.computeIfAbsent(testIdentifier.getUniqueId(), id -> new ConcurrentHashMap<>())
+                        .merge(key.substring(EXTENSION_ENTRY_PREFIX.length()), Long.parseLong(value), Long::sum);
+            }
+        });
+    }
+
+    @Override
+    public void testPlanExecutionFinished(TestPlan testPlan) {
+        if (reportFile == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(reportFile.toAbsolutePath().getParent());
+            try (Writer writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+                writeJson(writer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write test timing report " + reportFile, e);
+        }
+    }
+
+    // Все замеры, от самого долгого к самому быстрому
+    public List<Timing> getTimings() {
+        return timings.stream()
+                .sorted(Comparator.comparing(Timing::getDuration).reversed())
+                .collect(Collectors.toList());
+    }
+
+    // Тесты (не контейнеры), которые шли дольше budget
+    public List<Timing> getBudgetViolations() {
+        if (budget == null) {
+            return List.of();
+        }
+        return getTimings().stream()
+                .filter(timing -> timing.isTest() && timing.getDuration().compareTo(budget) > 0)
+                .collect(Collectors.toList());
+    }
+
+    public void printSlowest(PrintWriter writer, int count) {
+        writer.printf("%nSlowest %d tests:%n", count);
+        getTimings().stream()
+                .filter(Timing::isTest)
+                .limit(count)
+                .forEach(timing -> writer.printf("%10.3f ms  %s%n", millis(timing.getDuration()), timing.getName()));
+        List<Timing> violations = getBudgetViolations();
+        if (!violations.isEmpty()) {
+            writer.printf("%n%d tests exceeded the budget of %.3f ms:%n", violations.size(), millis(budget));
+            violations.forEach(timing -> writer.printf("%10.3f ms  %s%n", millis(timing.getDuration()), timing.getName()));
+        }
+        writer.flush();
+    }
+
+    private void writeJson(Writer writer) throws IOException {
+        List<Timing> sorted = getTimings();
+        writer.write("{\n  \"budgetMillis\": " + (budget == null ? "null" : String.valueOf(millis(budget))) + ",\n");
+        writer.write("  \"budgetViolations\": [");
+        writer.write(getBudgetViolations().stream().map(timing -> quote(timing.getUniqueId())).collect(Collectors.joining(", ")));
+        writer.write("],\n  \"timings\": [\n");
+        for (int i = 0; i < sorted.size(); i++) {
+            Timing timing = sorted.get(i);
+            writer.write("    {\"uniqueId\": " + quote(timing.getUniqueId())
+                    + ", \"name\": " + quote(timing.getName())
+                    + ", \"type\": " + quote(timing.isTest() ? "TEST" : "CONTAINER")
+                    + ", \"status\": " + quote(timing.getStatus().name())
+                    + ", \"durationMillis\": " + millis(timing.getDuration())
+                    + ", \"extensionsMillis\": {");
+            writer.write(timing.getExtensionNanos().entrySet().stream()
+                    .map(entry -> quote(entry.getKey()) + ": " + millis(Duration.ofNanos(entry.getValue())))
+                    .collect(Collectors.joining(", ")));
+            writer.write(i == sorted.size() - 1 ? "}}\n" : "}},\n");
+        }
+        writer.write("  ]\n}\n");
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1_000_000.0;
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    public static final class Timing {
+
+        private final String uniqueId;
+        private final String name;
+        private final boolean test;
+        private final Duration duration;
+        private final TestExecutionResult.Status status;
+        private final Map<String, Long> extensionNanos;
+
+        private Timing(TestIdentifier identifier, Duration duration, TestExecutionResult.Status status, Map<String, Long> extensionNanos) {
+            this.uniqueId = identifier.getUniqueId();
+            this.name = nameOf(identifier);
+            this.test = identifier.isTest();
+            this.duration = duration;
+            this.status = status;
+            this.extensionNanos = extensionNanos;
+        }
+
+        // UserServiceTest$LoginTest#loginParameterizedTest(String, String, Optional)[1] вместо длинного uniqueId
+        private static String nameOf(TestIdentifier identifier) {
+            TestSource source = identifier.getSource().orElse(null);
+            if (source instanceof MethodSource) {
+                String className = ((MethodSource) source).getClassName();
+                return className.substring(className.lastIndexOf('.') + 1) + "#" + identifier.getLegacyReportingName();
+            }
+            if (source instanceof ClassSource) {
+                String className = ((ClassSource) source).getClassName();
+                return className.substring(className.lastIndexOf('.') + 1);
+            }
+            return identifier.getDisplayName();
+        }
+
+        public String getUniqueId() {
+            return uniqueId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isTest() {
+            return test;
+        }
+
+        public Duration getDuration() {
+            return duration;
+        }
+
+        public TestExecutionResult.Status getStatus() {
+            return status;
+        }
+
+        // имя расширения и callback'а -> суммарное время в наносекундах
+        public Map<String, Long> getExtensionNanos() {
+            return extensionNanos;
+        }
+    }
+}
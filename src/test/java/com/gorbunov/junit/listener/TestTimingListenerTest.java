@@ -0,0 +1,143 @@
+package com.gorbunov.junit.listener;
+
+import com.gorbunov.junit.extension.GlobalExtension;
+import com.gorbunov.junit.extension.PostProcessingExtension;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.extension.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.discovery.DiscoverySelectors;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.core.LauncherFactory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestTimingListenerTest {
+
+    private static final String FIXTURE_PARAMETER = "timing.listener.fixture";
+    private static final String FIXTURE_NAME = "TestTimingListenerTest$Fixture";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reportsTimingsExtensionEntriesAndBudgetViolations() throws IOException {
+        Path reportFile = directory.resolve("timing").resolve("timing.json");
+        TestTimingListener listener = new TestTimingListener(reportFile, Duration.ofMillis(100));
+
+        LauncherFactory.create().execute(LauncherDiscoveryRequestBuilder.request()
+                .selectors(DiscoverySelectors.selectClass(Fixture.class))
+                .configurationParameter(FIXTURE_PARAMETER, "true")
+                .build(), listener);
+
+        TestTimingListener.Timing fast = timingOf(listener, FIXTURE_NAME + "#fast()");
+        TestTimingListener.Timing slow = timingOf(listener, FIXTURE_NAME + "#slow()");
+        TestTimingListener.Timing container = timingOf(listener, FIXTURE_NAME);
+
+        assertThat(fast.isTest()).isTrue();
+        assertThat(fast.getStatus()).isEqualTo(TestExecutionResult.Status.SUCCESSFUL);
+        assertThat(slow.getDuration()).isGreaterThanOrEqualTo(Fixture.SLOW_TEST_DURATION);
+        assertThat(container.isTest()).isFalse();
+        assertThat(container.getDuration()).isGreaterThan(slow.getDuration());
+        // самые долгие первыми
+        List<TestTimingListener.Timing> timings = listener.getTimings();
+        assertThat(timings.indexOf(slow)).isLessThan(timings.indexOf(fast));
+
+        // две записи с одним ключом складываются, каждая попадает в запись своего теста или контейнера
+        assertThat(fast.getExtensionNanos())
+                .containsEntry("FixtureExtension.beforeEach", 3_000L)
+                .containsKey("GlobalExtension.afterTestExecution")
+                .doesNotContainKey("FixtureExtension.beforeAll");
+        assertThat(slow.getExtensionNanos())
+                .containsKey("GlobalExtension.afterTestExecution")
+                .doesNotContainKey("FixtureExtension.beforeEach");
+        assertThat(container.getExtensionNanos())
+                .containsEntry("FixtureExtension.beforeAll", 5_000_000L)
+                .containsKey("GlobalExtension.beforeAll")
+                .doesNotContainKey("FixtureExtension.beforeEach");
+        // экземпляр создается для каждого теста, а запись публикуется в контексте класса: обе суммируются в контейнере
+        assertThat(container.getExtensionNanos()).containsKey("PostProcessingExtension.postProcessTestInstance");
+
+        assertThat(listener.getBudgetViolations()).containsExactly(slow);
+
+        String json = Files.readString(reportFile);
+        assertThat(json)
+                .startsWith("{\n  \"budgetMillis\": 100.0,\n")
+                .contains("  \"budgetViolations\": [\"" + slow.getUniqueId() + "\"],\n")
+                .contains("{\"uniqueId\": \"" + fast.getUniqueId() + "\", \"name\": \"" + FIXTURE_NAME + "#fast()\", "
+                        + "\"type\": \"TEST\", \"status\": \"SUCCESSFUL\", \"durationMillis\": ")
+                .contains("\"FixtureExtension.beforeEach\": 0.003")
+                .contains("\"GlobalExtension.afterTestExecution\": ")
+                .contains("\"type\": \"CONTAINER\"")
+                .contains("\"FixtureExtension.beforeAll\": 5.0")
+                .contains("\"GlobalExtension.beforeAll\": ")
+                .contains("\"PostProcessingExtension.postProcessTestInstance\": ")
+                .endsWith("}}\n  ]\n}\n");
+        assertThat(json.indexOf(slow.getUniqueId(), json.indexOf("\"timings\"")))
+                .isLessThan(json.indexOf(fast.getUniqueId(), json.indexOf("\"timings\"")));
+
+        StringWriter output = new StringWriter();
+        listener.printSlowest(new PrintWriter(output), 1);
+        assertThat(output.toString())
+                .contains("Slowest 1 tests:")
+                .contains(FIXTURE_NAME + "#slow()")
+                .contains("1 tests exceeded the budget of 100.000 ms:");
+    }
+
+    private static TestTimingListener.Timing timingOf(TestTimingListener listener, String name) {
+        return listener.getTimings().stream()
+                .filter(timing -> timing.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No timing for " + name + " in " + listener.getTimings()));
+    }
+
+    // Запускается только через Launcher из теста выше, при обычном прогоне отключен.
+    // GlobalExtension и PostProcessingExtension подключены, чтобы проверить, что их записи доходят до слушателя
+    @ExtendWith({FixtureExtension.class, GlobalExtension.class, PostProcessingExtension.class})
+    static class Fixture {
+
+        static final Duration SLOW_TEST_DURATION = Duration.ofMillis(150);
+
+        @BeforeAll
+        static void publishContainerEntry(TestReporter reporter) {
+            reporter.publishEntry(TestTimingListener.EXTENSION_ENTRY_PREFIX + "FixtureExtension.beforeAll", "5000000");
+        }
+
+        @Test
+        void fast() {
+        }
+
+        @Test
+        void slow() throws InterruptedException {
+            Thread.sleep(SLOW_TEST_DURATION.toMillis());
+        }
+    }
+
+    static class FixtureExtension implements ExecutionCondition, BeforeEachCallback {
+
+        @Override
+        public ConditionEvaluationResult evaluateExecutionCondition(ExtensionContext context) {
+            return context.getConfigurationParameter(FIXTURE_PARAMETER).isPresent()
+                    ? ConditionEvaluationResult.enabled("Started by TestTimingListenerTest")
+                    : ConditionEvaluationResult.disabled("Fixture for TestTimingListenerTest");
+        }
+
+        @Override
+        public void beforeEach(ExtensionContext context) {
+            if (context.getRequiredTestMethod().getName().equals("fast")) {
+                context.publishReportEntry(TestTimingListener.EXTENSION_ENTRY_PREFIX + "FixtureExtension.beforeEach", "1000");
+                context.publishReportEntry(TestTimingListener.EXTENSION_ENTRY_PREFIX + "FixtureExtension.beforeEach", "2000");
+            }
+        }
+    }
+}
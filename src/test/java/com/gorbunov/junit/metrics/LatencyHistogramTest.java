@@ -0,0 +1,64 @@
+package com.gorbunov.junit.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+    @Test
+    void quantilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1_000);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(false);
+
+        assertThat(snapshot.getCount()).isEqualTo(100_000);
+        assertThat(snapshot.getMax()).isEqualTo(100_000_000L);
+        assertThat((double) snapshot.getValueAtQuantile(0.5)).isCloseTo(50_000_000, within(50_000_000 * 0.04));
+        assertThat((double) snapshot.getValueAtQuantile(0.99)).isCloseTo(99_000_000, within(99_000_000 * 0.04));
+        assertThat((double) snapshot.getValueAtQuantile(0.999)).isCloseTo(99_900_000, within(99_900_000 * 0.04));
+        assertThat(snapshot.getValueAtQuantile(1.0)).isEqualTo(100_000_000L);
+    }
+
+    @Test
+    void concurrentRecordsAreNotLost() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            long offset = thread;
+            executor.execute(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(i + offset);
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(false);
+        assertThat(snapshot.getCount()).isEqualTo(400_000);
+        assertThat(snapshot.getMax()).isEqualTo(49_999 + 7);
+    }
+
+    @Test
+    void snapshotWithResetClearsHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.record(-5);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(true);
+
+        assertThat(snapshot.getCount()).isEqualTo(2);
+        assertThat(snapshot.getValueAtQuantile(0.5)).isZero();
+        assertThat(histogram.snapshot(false).getCount()).isZero();
+        assertThat(histogram.snapshot(false).getMax()).isZero();
+    }
+}
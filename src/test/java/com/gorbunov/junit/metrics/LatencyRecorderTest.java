@@ -0,0 +1,62 @@
+package com.gorbunov.junit.metrics;
+
+import com.gorbunov.junit.dao.UserDao;
+import com.gorbunov.junit.dto.User;
+import com.gorbunov.junit.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LatencyRecorderTest {
+
+    @Test
+    void recordsServiceAndDaoCalls() {
+        UserDao userDao = Mockito.mock(UserDao.class);
+        Mockito.doReturn(true).when(userDao).delete(1);
+        LatencyRecorder recorder = new LatencyRecorder();
+        UserService userService = new UserService(recorder.wrap(userDao));
+        userService.enableLatencyRecording(recorder);
+
+        userService.add(User.of(1, "Ivan", "123"));
+        userService.login("Ivan", "123");
+        userService.login("Petr", "123");
+        assertThrows(IllegalArgumentException.class, () -> userService.login(null, "123"));
+        userService.getAllConvertedById();
+        assertThat(userService.delete(1)).isTrue();
+        userService.deleteAll(List.of(2, 3));
+
+        Map<Operation, OperationStats> stats = recorder.snapshot();
+        assertThat(stats.get(Operation.LOGIN).getCalls()).isEqualTo(3);
+        assertThat(stats.get(Operation.LOGIN).getErrors()).isEqualTo(1);
+        assertThat(stats.get(Operation.ADD).getCalls()).isEqualTo(1);
+        assertThat(stats.get(Operation.GET_ALL_CONVERTED_BY_ID).getCalls()).isEqualTo(1);
+        assertThat(stats.get(Operation.DELETE).getCalls()).isEqualTo(1);
+        assertThat(stats.get(Operation.DAO_DELETE).getCalls()).isEqualTo(1);
+        assertThat(stats.get(Operation.DAO_DELETE_ALL).getCalls()).isEqualTo(1);
+        assertThat(stats.get(Operation.LOGIN).getMax()).isGreaterThanOrEqualTo(stats.get(Operation.LOGIN).getP50());
+        Mockito.verify(userDao).deleteAll(List.of(2, 3));
+    }
+
+    @Test
+    void snapshotAndResetStartsNewWindow() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        recorder.record(Operation.LOGIN, System.nanoTime(), true);
+
+        assertThat(recorder.snapshotAndReset().get(Operation.LOGIN).getErrors()).isEqualTo(1);
+        assertThat(recorder.snapshot().get(Operation.LOGIN).getCalls()).isZero();
+    }
+
+    @Test
+    void closingWrappedDaoClosesDelegate() {
+        UserDao userDao = Mockito.mock(UserDao.class);
+
+        new LatencyRecorder().wrap(userDao).close();
+
+        Mockito.verify(userDao).close();
+    }
+}
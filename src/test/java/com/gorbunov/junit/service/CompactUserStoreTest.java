@@ -0,0 +1,95 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CompactUserStoreTest {
+
+    // Компактное хранилище должно вести себя так же, как хранилище по умолчанию
+    @Test
+    void behavesLikeDefaultStore() {
+        DefaultUserStore expected = new DefaultUserStore();
+        CompactUserStore actual = new CompactUserStore();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 50_000; i++) {
+            int id = random.nextInt(20_000);
+            User user = User.of(id, "пользователь-" + random.nextInt(30_000), "пароль" + random.nextInt(3));
+            expected.add(user);
+            actual.add(user);
+        }
+
+        assertThat(actual.getAll()).containsExactlyElementsOf(expected.getAll());
+        assertThat(actual.getAllConvertedById()).isEqualTo(expected.getAllConvertedById());
+        for (int i = 0; i < 10_000; i++) {
+            String username = "пользователь-" + random.nextInt(30_000);
+            String password = "пароль" + random.nextInt(3);
+            assertThat(actual.findByUsernameAndPassword(username, password).isPresent())
+                    .isEqualTo(expected.findByUsernameAndPassword(username, password).isPresent());
+            int id = random.nextInt(25_000);
+            assertThat(actual.findById(id)).isEqualTo(expected.findById(id));
+        }
+    }
+
+    // Порядок username должен совпадать с String.compareTo, в том числе для символов выше U+FFFF
+    @Test
+    void sortedUsernameIndexMatchesDefaultStore() {
+        DefaultUserStore expected = new DefaultUserStore();
+        CompactUserStore actual = new CompactUserStore();
+        String[] suffixes = {"", "я", "\uE000", "\uFFFF", "\uD83D\uDE00"};
+        Random random = new Random(11);
+
+        for (int i = 0; i < 20_000; i++) {
+            String username = "u" + random.nextInt(5_000) + suffixes[random.nextInt(suffixes.length)];
+            User user = User.of(random.nextInt(10_000), username, "1");
+            expected.add(user);
+            actual.add(user);
+        }
+
+        for (int i = 0; i < 1_000; i++) {
+            String prefix = "u" + random.nextInt(600);
+            assertThat(usernames(actual.findByUsernamePrefix(prefix, 20)))
+                    .isEqualTo(usernames(expected.findByUsernamePrefix(prefix, 20)));
+        }
+        List<String> pages = new ArrayList<>();
+        for (List<User> page = actual.listUsers(null, 100); !page.isEmpty(); page = actual.listUsers(page.get(page.size() - 1).getUsername(), 100)) {
+            pages.addAll(usernames(page));
+        }
+        assertThat(pages).isEqualTo(usernames(expected.listUsers(null, Integer.MAX_VALUE)));
+    }
+
+    @Test
+    void firstAddedUserWinsForSharedUsername() {
+        CompactUserStore store = new CompactUserStore(DuplicateIdPolicy.REJECT);
+        User first = User.of(1, "Ivan", "123");
+        store.add(first);
+        store.add(User.of(2, "Ivan", "123"));
+
+        assertThat(store.findByUsernameAndPassword("Ivan", "123")).contains(first);
+        assertThrows(IllegalStateException.class, () -> store.add(User.of(1, "Petr", "111")));
+        assertThat(store.getAll()).hasSize(2);
+    }
+
+    @Test
+    void convertedByIdIsLiveView() {
+        CompactUserStore store = new CompactUserStore();
+        Map<Integer, User> users = store.getAllConvertedById();
+
+        store.add(User.of(1, "Ivan", "123"));
+
+        assertThat(users).containsEntry(1, User.of(1, "Ivan", "123")).doesNotContainKey(2);
+    }
+
+    private static List<String> usernames(List<User> users) {
+        return users.stream().map(User::getUsername).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,62 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.TestBase;
+import com.gorbunov.junit.dto.User;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Tag("user")
+class ConcurrentUserStoreTest extends TestBase {
+
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int USERS_PER_THREAD = 20_000;
+
+    @Test
+    void concurrentAddsAndLoginsDoNotLoseUpdates() throws Exception {
+        UserService userService = new UserService(null, new ConcurrentUserStore());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger failedLogins = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                int firstId = thread * USERS_PER_THREAD;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int id = firstId; id < firstId + USERS_PER_THREAD; id++) {
+                        userService.add(User.of(id, "user" + id, "password" + id));
+                        // Пользователь, добавленный этим же потоком, обязан быть виден сразу
+                        if (userService.login("user" + id, "password" + id).isEmpty()) {
+                            failedLogins.incrementAndGet();
+                        }
+                        if (id % 1_000 == 0) {
+                            userService.getAllConvertedById();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int expectedUsers = THREADS * USERS_PER_THREAD;
+        assertThat(failedLogins).hasValue(0);
+        assertThat(userService.getAll()).hasSize(expectedUsers);
+        assertThat(userService.getAllConvertedById()).hasSize(expectedUsers);
+        assertThat(userService.login("user0", "password0")).isPresent();
+        assertThat(userService.login("user" + (expectedUsers - 1), "password" + (expectedUsers - 1))).isPresent();
+    }
+}
@@ -0,0 +1,73 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoginCacheTest {
+
+    private static final User IVAN = User.of(1, "Ivan", "123");
+
+    private final AtomicLong now = new AtomicLong();
+    private final UserStore userStore = Mockito.spy(new DefaultUserStore());
+    private final UserService userService = new UserService(null, userStore);
+
+    @Test
+    void hitsAndMissesAreCachedUntilAdd() {
+        userService.add(IVAN);
+        LoginCache loginCache = userService.enableLoginCache(settings(100));
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(userService.login("Ivan", "123")).contains(IVAN);
+            assertThat(userService.login("Ivan", "wrong")).isEmpty();
+        }
+        Mockito.verify(userStore, Mockito.times(2)).findByUsernameAndPassword(Mockito.any(), Mockito.any());
+
+        // новый пользователь мог бы превратить закэшированную неудачу в успешный вход
+        userService.add(User.of(2, "Ivan", "wrong"));
+        assertThat(userService.login("Ivan", "wrong")).contains(User.of(2, "Ivan", "wrong"));
+
+        assertThat(loginCache.getStats()).isEqualTo(new LoginCacheStats(4, 3, 0, 1, 2));
+    }
+
+    @Test
+    void entriesExpireAfterTtl() {
+        userService.add(IVAN);
+        LoginCache loginCache = userService.enableLoginCache(settings(100));
+
+        userService.login("Ivan", "123");
+        userService.login("Ivan", "wrong");
+        now.addAndGet(Duration.ofSeconds(5).toNanos());
+        userService.login("Ivan", "123");
+        userService.login("Ivan", "wrong");
+
+        assertThat(loginCache.getStats().getHits()).isEqualTo(1);
+        assertThat(loginCache.getStats().getInvalidations()).isEqualTo(1);
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() {
+        LoginCache loginCache = userService.enableLoginCache(settings(16));
+
+        for (int i = 0; i < 1_000; i++) {
+            userService.login("user" + i, "password");
+        }
+
+        assertThat(loginCache.getStats().getSize()).isLessThanOrEqualTo(16);
+        assertThat(loginCache.getStats().getEvictions()).isEqualTo(1_000 - loginCache.getStats().getSize());
+    }
+
+    private LoginCacheSettings settings(int maximumSize) {
+        return LoginCacheSettings.builder()
+                .maximumSize(maximumSize)
+                .ttl(Duration.ofMinutes(1))
+                .negativeTtl(Duration.ofSeconds(1))
+                .ticker(now::get)
+                .build();
+    }
+}
@@ -0,0 +1,107 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dao.UserDao;
+import com.gorbunov.junit.dto.User;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShardedUserServiceTest {
+
+    private static final User IVAN = User.of(1, "Ivan", "123");
+    private static final User PETR = User.of(2, "Petr", "111");
+    private static final int USERS_COUNT = 10_000;
+    // пользователь с этим id добавляется повторно с другим username
+    private static final User RENAMED = User.of(42, "renamed", "secret");
+
+    @Test
+    void routesLoginFindByIdAndDelete() {
+        UserDao first = Mockito.mock(UserDao.class);
+        UserDao second = Mockito.mock(UserDao.class);
+        Mockito.doReturn(true).when(second).delete(1);
+        ShardedUserService service = new ShardedUserService(List.of(first, second), DefaultUserStore::new, ForkJoinPool.commonPool());
+
+        service.add(IVAN, PETR, User.of(3, "Ivan", "321"));
+
+        assertThat(service.login("Ivan", "123")).contains(IVAN);
+        assertThat(service.login("Ivan", "321")).contains(User.of(3, "Ivan", "321"));
+        assertThat(service.login("Petr", "123")).isEmpty();
+        assertThat(service.findById(2)).contains(PETR);
+        assertThat(service.findById(4)).isEmpty();
+        assertThat(service.delete(1)).isTrue();
+        Mockito.verifyNoInteractions(first);
+        assertThrows(IllegalArgumentException.class, () -> service.login(null, "123"));
+    }
+
+    @Test
+    void parallelAddMatchesSingleService() {
+        List<User> users = IntStream.range(0, USERS_COUNT)
+                .mapToObj(id -> User.of(id, "user" + id % 5_000, "password" + id))
+                .collect(Collectors.toList());
+        List<User> expected = users.stream()
+                .map(user -> user.getId().equals(RENAMED.getId()) ? RENAMED : user)
+                .collect(Collectors.toList());
+        ShardedUserService service = new ShardedUserService(Mockito.mock(UserDao.class), 8);
+
+        service.add(users.toArray(new User[0]));
+        Map<Integer, User> beforeRename = service.getAllConvertedById();
+        // замена по id должна попасть в тот же шард, что и исходный пользователь, и убрать его из индекса по username
+        service.add(RENAMED);
+
+        assertThat(service.getAll()).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(service.getAllConvertedById())
+                .isEqualTo(expected.stream().collect(Collectors.toMap(User::getId, user -> user)))
+                .isSameAs(service.getAllConvertedById());
+        assertThat(beforeRename).containsEntry(RENAMED.getId(), users.get(RENAMED.getId()));
+        assertThat(service.login("renamed", "secret")).contains(RENAMED);
+        assertThat(service.login("user42", "password42")).isEmpty();
+        assertThat(service.login("user42", "password5042")).contains(users.get(5_042));
+        assertThat(service.login("user7", "password5007")).contains(users.get(5_007));
+        assertThat(service.version()).isEqualTo(USERS_COUNT + 1);
+    }
+
+    // Раньше шард брался из младших бит произведения, и username с одинаковыми младшими битами hashCode
+    // попадали в один шард
+    @Test
+    void usernamesWithSameLowHashBitsAreSpreadAcrossShards() {
+        int shardCount = 8;
+        int[] usersPerShard = new int[shardCount];
+        IntStream.range(0, 1_000_000)
+                .mapToObj(i -> "user" + i)
+                .filter(username -> (username.hashCode() & 63) == 0)
+                .forEach(username -> usersPerShard[ShardedUserService.shardOf(username, shardCount)]++);
+
+        int total = IntStream.of(usersPerShard).sum();
+        assertThat(IntStream.of(usersPerShard).min().getAsInt()).isGreaterThan(total / shardCount / 2);
+        assertThat(IntStream.of(usersPerShard).max().getAsInt()).isLessThan(total / shardCount * 2);
+    }
+
+    @Test
+    void defaultShardStoresKeepNoUsernameIndex() {
+        ConcurrentUserStore store = ConcurrentUserStore.withoutUsernameIndex(DuplicateIdPolicy.REPLACE);
+        store.add(IVAN);
+
+        assertThat(store.findById(IVAN.getId())).contains(IVAN);
+        assertThrows(UnsupportedOperationException.class, () -> store.findByUsernameAndPassword("Ivan", "123"));
+        ShardedUserService service = new ShardedUserService(Mockito.mock(UserDao.class), 4);
+        service.add(IVAN, User.of(IVAN.getId(), "renamed", "1"));
+        assertThat(service.login("renamed", "1")).contains(User.of(IVAN.getId(), "renamed", "1"));
+        assertThat(service.login("Ivan", "123")).isEmpty();
+    }
+
+    @Test
+    void shardCountIsLimited() {
+        UserDao userDao = Mockito.mock(UserDao.class);
+
+        assertThrows(IllegalArgumentException.class, () -> new ShardedUserService(userDao, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ShardedUserService(userDao, 65));
+    }
+}
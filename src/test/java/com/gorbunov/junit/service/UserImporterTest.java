@@ -0,0 +1,80 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class UserImporterTest {
+
+    @TempDir
+    Path directory;
+
+    // Маленький буфер, чтобы строки и многобайтовые символы разрывались между кусками
+    @Test
+    void importsCsvAndReportsBadRows() throws IOException {
+        Path file = write("users.csv", "id,username,password\r\n"
+                + "1,Ivan,123\r\n"
+                + "2,\"Petr, \"\"the great\"\"\",111\n"
+                + "\n"
+                + "x,Broken,1\n"
+                + "3,Анна,пароль\n"
+                + "4,NoPassword\n"
+                + "5,Vlad,321");
+        UserService userService = new UserService(null);
+        List<Long> progress = new ArrayList<>();
+
+        ImportReport report = userService.importUsers(file, ImportSettings.builder()
+                .chunkSize(7)
+                .batchSize(2)
+                .listener((bytesRead, totalBytes, imported, skipped) -> progress.add(imported))
+                .build());
+
+        assertThat(userService.getAll()).containsExactly(
+                User.of(1, "Ivan", "123"),
+                User.of(2, "Petr, \"the great\"", "111"),
+                User.of(3, "Анна", "пароль"),
+                User.of(5, "Vlad", "321"));
+        assertThat(report.getImported()).isEqualTo(4);
+        assertThat(report.getSkipped()).isEqualTo(2);
+        assertThat(report.getRejectedRows()).extracting(ImportReport.RejectedRow::getLine, ImportReport.RejectedRow::getReason)
+                .containsExactly(tuple(5L, "Invalid id: x"), tuple(7L, "Expected 3 fields but found 2"));
+        assertThat(progress).containsExactly(2L, 4L, 4L);
+    }
+
+    @Test
+    void importsNdjsonAndSkipsDuplicatesRejectedByStore() throws IOException {
+        Path file = write("users.ndjson", "{\"id\": 1, \"username\": \"Ivan\", \"password\": \"123\", \"admin\": true}\n"
+                + "{\"id\":2,\"username\":\"P\\u0065tr\",\"password\":\"1\\\"1\"}\n"
+                + "{\"id\":1,\"username\":\"Ivan2\",\"password\":\"321\"}\n"
+                + "{\"id\":3,\"username\":\"Vlad\"\n"
+                + "{\"id\":4,\"username\":\"" + "x".repeat(200) + "\",\"password\":\"1\"}\n");
+        UserService userService = new UserService(null, new DefaultUserStore(DuplicateIdPolicy.REJECT));
+
+        ImportReport report = userService.importUsers(file, ImportSettings.builder()
+                .format(ImportFormat.NDJSON)
+                .maxLineLength(100)
+                .build());
+
+        assertThat(userService.getAll()).containsExactly(User.of(1, "Ivan", "123"), User.of(2, "Petr", "1\"1"));
+        assertThat(report.getImported()).isEqualTo(2);
+        assertThat(report.getRejectedRows()).extracting(ImportReport.RejectedRow::getLine, ImportReport.RejectedRow::getReason)
+                .containsExactly(
+                        tuple(3L, "Duplicate user id: 1"),
+                        tuple(4L, "Unexpected end of JSON"),
+                        tuple(5L, "Line is longer than 100 bytes"));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
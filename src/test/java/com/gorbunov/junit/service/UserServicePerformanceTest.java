@@ -0,0 +1,96 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.TestBase;
+import com.gorbunov.junit.dto.User;
+import com.gorbunov.junit.extension.PerformanceTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Isolated;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Замеры не должны делить процессор с другими тестами, поэтому класс выполняется в одиночку даже при параллельном запуске,
+// а из обычного gradle test исключен по тегу performance: запуск через gradle performanceTest.
+// Пределы взяты с большим запасом к LoginCacheBenchmark: тест ловит регрессии на порядки (например, возврат к перебору
+// всех пользователей), а не колебания в десятки процентов
+@Isolated
+@Tag("performance")
+@Tag("user")
+class UserServicePerformanceTest extends TestBase {
+
+    private static final int USERS_COUNT = 100_000;
+    private static final String LAST_USERNAME = "user" + (USERS_COUNT - 1);
+    private static final String LAST_PASSWORD = "password" + (USERS_COUNT - 1);
+    private static final int LOGINS_PER_SAMPLE = 100;
+    private static final int SAMPLES = 301;
+    private static final long MIN_BASELINE_NANOS = 200;
+
+    private UserService userService;
+
+    @BeforeEach
+    void prepare() {
+        userService = new UserService(null, new DefaultUserStore());
+        userService.add(IntStream.range(0, USERS_COUNT)
+                .mapToObj(i -> User.of(i, "user" + i, "password" + i))
+                .toArray(User[]::new));
+    }
+
+    // Внутри тела только assertTrue/assertFalse: AssertJ создает объекты на каждую проверку и исказил бы замер памяти
+    @PerformanceTest(warmup = 20_000, iterations = 20_000, p50Max = 50, p99Max = 500, maxBytesPerInvocation = 256)
+    void loginSucceeds() {
+        assertTrue(userService.login(LAST_USERNAME, LAST_PASSWORD).isPresent());
+    }
+
+    @PerformanceTest(warmup = 20_000, iterations = 20_000, p50Max = 50, p99Max = 500, maxBytesPerInvocation = 256)
+    void loginFailsForUnknownUser() {
+        assertFalse(userService.login("dummy", LAST_PASSWORD).isPresent());
+    }
+
+    // Логин идет через индекс по username: при переходе от тысячи к миллиону пользователей время может вырасти
+    // из-за промахов кэша, но не в сотни раз, как при переборе списка. Медиана на тысяче пользователей - десятки наносекунд,
+    // и десятикратный запас от нее ловил бы шум, поэтому база не меньше MIN_BASELINE_NANOS: перебор миллиона все равно дальше
+    @Test
+    void loginLatencyDoesNotDependOnUsersCount() {
+        long small = medianLoginNanos(1_000);
+        long large = medianLoginNanos(1_000_000);
+
+        assertThat(large)
+                .as("median login time with 1M users is %d ns, with 1k users %d ns", large, small)
+                .isLessThan(Math.max(small, MIN_BASELINE_NANOS) * 10);
+    }
+
+    // Медиана времени одного login (удачного и неудачного попеременно) после прогрева
+    private static long medianLoginNanos(int usersCount) {
+        UserService service = new UserService(null, new DefaultUserStore());
+        service.add(IntStream.range(0, usersCount)
+                .mapToObj(i -> User.of(i, "user" + i, "password" + i))
+                .toArray(User[]::new));
+        String username = "user" + (usersCount - 1);
+        String password = "password" + (usersCount - 1);
+
+        for (int i = 0; i < 20_000; i++) {
+            loginPair(service, username, password);
+        }
+        long[] samples = new long[SAMPLES];
+        for (int sample = 0; sample < SAMPLES; sample++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < LOGINS_PER_SAMPLE / 2; i++) {
+                loginPair(service, username, password);
+            }
+            samples[sample] = (System.nanoTime() - start) / LOGINS_PER_SAMPLE;
+        }
+        Arrays.sort(samples);
+        return samples[SAMPLES / 2];
+    }
+
+    private static void loginPair(UserService service, String username, String password) {
+        assertTrue(service.login(username, password).isPresent());
+        assertFalse(service.login("dummy", password).isPresent());
+    }
+}
@@ -2,6 +2,8 @@ package com.gorbunov.junit.service;
 
 import com.gorbunov.junit.TestBase;
 import com.gorbunov.junit.dao.UserDao;
+import com.gorbunov.junit.dto.Credentials;
+import com.gorbunov.junit.dto.LoginResult;
 import com.gorbunov.junit.dto.User;
 import com.gorbunov.junit.extension.*;
 import org.hamcrest.MatcherAssert;
@@ -9,6 +11,8 @@ import org.hamcrest.collection.IsEmptyCollection;
 import org.hamcrest.collection.IsMapContaining;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.*;
 import org.mockito.*;
@@ -16,9 +20,14 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -26,8 +35,12 @@ import static org.junit.jupiter.api.Assertions.*;
 
 @Tag("fast") // позволяет группировать тесты по классам и методам, которые нужно запустить, а какие нет.
 @Tag("user")
-@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestInstance(TestInstance.Lifecycle.PER_METHOD)
 // PER_METHOD -это стоит по умолчанию. Создается новый объект класса UserServiceTest для каждого теста.
+// PER_CLASS делил один userService и один mock userDao между тестами, поэтому тесты нельзя было запускать параллельно.
+// Кроме того, MockitoExtension пересоздавал mock перед каждым тестом, а @InjectMocks в уже заполненное поле его не внедрял.
+// Параллельный запуск включается через gradle test -PparallelTests (см. junit-platform.properties)
+@Execution(ExecutionMode.CONCURRENT)
 // Чтобы методы выполнялись по порядку. Надо ставить @Order над методами. Методы без этой аннотации вызовутся в произвольном порядке.
 //@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 //@TestMethodOrder(MethodOrderer.Random.class) // Всегда разный порядок
@@ -47,7 +60,9 @@ class UserServiceTest extends TestBase {
     private static final User IVAN = User.of(1, "Ivan", "123");
     private static final User PETR = User.of(2, "Petr", "111");
     private static final User VLAD = User.of(3, "Vlad", "123");
-    @InjectMocks // Говорит: внедри сюда mock(объект с аннотацией @Mock или  @Spy)
+//    @InjectMocks // Говорит: внедри сюда mock(объект с аннотацией @Mock или  @Spy)
+    // @InjectMocks вызывает самый длинный конструктор и передает null в userStore, для которого нет мока,
+    // поэтому сервис создается вручную в prepare()
     private UserService userService;
     @Mock(lenient = true) // = Mockito.mock(UserDao.class)
 //    @Spy // = Mockito.spy(new UserDao())
@@ -61,16 +76,16 @@ class UserServiceTest extends TestBase {
     }
 
     // должен быть static для TestInstance.Lifecycle.PER_METHOD или менять на PER_CLASS
-//    @BeforeAll
-//    static void init() {
-//        System.out.println("Before all");
-//    }
-
     @BeforeAll
-    void init() {
-        System.out.println("Before all: " + this);
+    static void init() {
+        System.out.println("Before all");
     }
 
+//    @BeforeAll
+//    void init() {
+//        System.out.println("Before all: " + this);
+//    }
+
 //    @BeforeEach
 //    void prepare(UserService userService) {
 //        System.out.println("Before each: " + this);
@@ -91,7 +106,7 @@ class UserServiceTest extends TestBase {
 //        Mockito.lenient().when(userDao.delete(IVAN.getId())).thenReturn(true);
 //        this.userDao = Mockito.mock(UserDao.class); // создание Mock
 //        this.userDao = Mockito.spy(new UserDao()); // создание Spy
-//        this.userService = new UserService(userDao);
+        this.userService = new UserService(userDao, new DefaultUserStore());
     }
 
     @Test
@@ -132,6 +147,16 @@ class UserServiceTest extends TestBase {
     }
 
 
+    @Test
+    void deleteAllDelegatesBatchToDao() {
+        Mockito.doReturn(Map.of(IVAN.getId(), true, PETR.getId(), false))
+                .when(userDao).deleteAll(List.of(IVAN.getId(), PETR.getId()));
+
+        Map<Integer, Boolean> results = userService.deleteAll(List.of(IVAN.getId(), PETR.getId()));
+
+        assertThat(results).containsEntry(IVAN.getId(), true).containsEntry(PETR.getId(), false);
+    }
+
     @Test
     @DisplayName("user will be empty if no user added")
     // Позволяет игнорировать тест. Flaky(чудной, со странностями) тесты - неустойчивые тесты. Разные значения при перезапуске тестов.
@@ -193,16 +218,16 @@ class UserServiceTest extends TestBase {
         System.out.println("After each: " + this);
     }
 
-//    @AfterAll
-//    static void closeConnectionPool() {
-//        System.out.println("After all");
-//    }
-
     @AfterAll
-    void closeConnectionPool() {
-        System.out.println("After all: " + this);
+    static void closeConnectionPool() {
+        System.out.println("After all");
     }
 
+//    @AfterAll
+//    void closeConnectionPool() {
+//        System.out.println("After all: " + this);
+//    }
+
     // Позволяет разграничивать логически группы с помощью вложенных классов
     @Nested
     @DisplayName("Test user login functionality")
@@ -277,6 +302,42 @@ class UserServiceTest extends TestBase {
             });
         }
 
+        @Test
+        void loginAllKeepsOrderAndReportsNullArgumentsPerItem() {
+            userService.add(IVAN, PETR);
+
+            List<LoginResult> results = userService.loginAll(Arrays.asList(
+                    Credentials.of("Ivan", "123"),
+                    Credentials.of(null, "123"),
+                    null,
+                    Credentials.of("Petr", "wrong"),
+                    Credentials.of("Petr", "111")));
+
+            assertThat(results).extracting(LoginResult::getUser)
+                    .containsExactly(Optional.of(IVAN), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of(PETR));
+            assertThat(results).extracting(LoginResult::isFailed).containsExactly(false, true, true, false, false);
+            IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> results.get(1).orElseThrow());
+            assertThat(exception.getMessage()).isEqualTo("Username or password is null");
+        }
+
+        @Test
+        void parallelLoginAllMatchesSequential() {
+            UserService service = new UserService(userDao, new ConcurrentUserStore());
+            service.add(IntStream.range(0, 1_000).mapToObj(i -> User.of(i, "user" + i, "password" + i)).toArray(User[]::new));
+            List<Credentials> credentials = IntStream.range(0, 5_000)
+                    .mapToObj(i -> i % 100 == 0 ? Credentials.of("user" + i, null) : Credentials.of("user" + i % 2_000, "password" + i % 2_000))
+                    .collect(Collectors.toCollection(LinkedList::new));
+
+            ForkJoinPool pool = new ForkJoinPool(4);
+            List<LoginResult> parallel = service.loginAll(credentials, pool);
+            pool.shutdown();
+            List<LoginResult> sequential = service.loginAll(credentials);
+
+            // исключения разные объекты, поэтому сравниваем пользователей и признак ошибки
+            assertThat(parallel).extracting(LoginResult::getUser).isEqualTo(sequential.stream().map(LoginResult::getUser).collect(Collectors.toList()));
+            assertThat(parallel).extracting(LoginResult::isFailed).isEqualTo(sequential.stream().map(LoginResult::isFailed).collect(Collectors.toList()));
+        }
+
         @ParameterizedTest(name = "{arguments} test") // name определяет имена тестов с помощью placeholder'ов
 //        @ArgumentsSource()
         //все эти аннотации используются только для 1 параметра: @NullSource @EmptySource @NullAndEmptySource @ValueSource @EnumSource
@@ -304,6 +365,128 @@ class UserServiceTest extends TestBase {
         }
     }
 
+    @Nested
+    @DisplayName("Test user lookup by id")
+    class FindByIdTest {
+
+        @Test
+        void findByIdReturnsAddedUser() {
+            UserService service = new UserService(userDao);
+            service.add(IVAN, PETR);
+
+            assertThat(service.findById(IVAN.getId())).contains(IVAN);
+            assertThat(service.findById(VLAD.getId())).isEmpty();
+        }
+
+        @Test
+        void convertedByIdIsReadOnlyViewUpdatedOnAdd() {
+            UserService service = new UserService(userDao);
+            Map<Integer, User> users = service.getAllConvertedById();
+
+            service.add(IVAN, PETR);
+
+            assertThat(service.getAllConvertedById()).isSameAs(users);
+            assertThat(users).containsOnlyKeys(IVAN.getId(), PETR.getId()).containsValues(IVAN, PETR);
+            assertThrows(UnsupportedOperationException.class, () -> users.put(VLAD.getId(), VLAD));
+        }
+
+        @Test
+        void duplicateIdIsRejected() {
+            UserService service = new UserService(userDao, new DefaultUserStore(DuplicateIdPolicy.REJECT));
+            service.add(IVAN);
+
+            assertThrows(IllegalStateException.class, () -> service.add(User.of(IVAN.getId(), "Ivan2", "321")));
+            assertThat(service.getAll()).containsExactly(IVAN);
+            assertThat(service.login("Ivan2", "321")).isEmpty();
+        }
+
+        @ParameterizedTest
+        @MethodSource("com.gorbunov.junit.service.UserServiceTest#getStoresWithReplacePolicy")
+        void duplicateIdReplacesUser(UserStore userStore) {
+            UserService service = new UserService(userDao, userStore);
+            User renamedIvan = User.of(IVAN.getId(), "Ivan2", "321");
+            service.add(IVAN, PETR, renamedIvan);
+
+            assertThat(service.getAll()).containsExactlyInAnyOrder(renamedIvan, PETR);
+            assertThat(service.findById(IVAN.getId())).contains(renamedIvan);
+            assertThat(service.login(IVAN.getUsername(), IVAN.getPassword())).isEmpty();
+            assertThat(service.login("Ivan2", "321")).contains(renamedIvan);
+        }
+
+        @ParameterizedTest
+        @MethodSource("com.gorbunov.junit.service.UserServiceTest#getSnapshotStores")
+        void getAllReturnsImmutableVersion(UserStore userStore) {
+            UserService service = new UserService(userDao, userStore);
+            service.add(IVAN);
+            long version = service.version();
+            List<User> users = service.getAll();
+
+            service.add(PETR, User.of(IVAN.getId(), "Ivan2", "321"));
+
+            assertThat(users).containsExactly(IVAN);
+            assertThat(service.getAll()).containsExactly(User.of(IVAN.getId(), "Ivan2", "321"), PETR);
+            assertThat(service.version()).isEqualTo(version + 2);
+            assertThrows(UnsupportedOperationException.class, () -> users.add(VLAD));
+        }
+    }
+
+    @Nested
+    @DisplayName("Test username prefix search and paging")
+    class UsernameSearchTest {
+
+        @ParameterizedTest
+        @MethodSource("com.gorbunov.junit.service.UserServiceTest#getStoresWithReplacePolicy")
+        void findByUsernamePrefixIsSortedAndLimited(UserStore userStore) {
+            UserService service = new UserService(userDao, userStore);
+            User ivanTwin = User.of(4, "Ivan", "321");
+            service.add(PETR, User.of(5, "Ivanov", "1"), IVAN, VLAD, ivanTwin, User.of(6, "Iv", "2"));
+
+            assertThat(service.findByUsernamePrefix("Iva", 10)).containsExactly(IVAN, ivanTwin, User.of(5, "Ivanov", "1"));
+            assertThat(service.findByUsernamePrefix("Iv", 2)).containsExactly(User.of(6, "Iv", "2"), IVAN);
+            assertThat(service.findByUsernamePrefix("Z", 10)).isEmpty();
+            assertThrows(IllegalArgumentException.class, () -> service.findByUsernamePrefix(null, 10));
+        }
+
+        @ParameterizedTest
+        @MethodSource("com.gorbunov.junit.service.UserServiceTest#getStoresWithReplacePolicy")
+        void listUsersPagesWithoutSplittingUsername(UserStore userStore) {
+            UserService service = new UserService(userDao, userStore);
+            User ivanTwin = User.of(4, "Ivan", "321");
+            User anna = User.of(5, "Anna", "1");
+            service.add(VLAD, IVAN, PETR, ivanTwin, anna);
+
+            List<User> first = service.listUsers(null, 2);
+            List<User> second = service.listUsers(first.get(first.size() - 1).getUsername(), 2);
+            List<User> third = service.listUsers(second.get(second.size() - 1).getUsername(), 2);
+
+            assertThat(first).containsExactly(anna);
+            assertThat(second).containsExactly(IVAN, ivanTwin);
+            assertThat(third).containsExactly(PETR, VLAD);
+            assertThat(service.listUsers("Vlad", 2)).isEmpty();
+        }
+
+        @Test
+        void renamedUserMovesInIndex() {
+            UserService service = new UserService(userDao);
+            service.add(IVAN, User.of(IVAN.getId(), "Zoe", "1"));
+
+            assertThat(service.findByUsernamePrefix("Iv", 10)).isEmpty();
+            assertThat(service.listUsers(null, 10)).containsExactly(User.of(IVAN.getId(), "Zoe", "1"));
+        }
+    }
+
+    static Stream<UserStore> getSnapshotStores() {
+        return Stream.of(new DefaultUserStore(), new ConcurrentUserStore());
+    }
+
+    static Stream<UserStore> getStoresWithReplacePolicy() {
+        return Stream.of(
+                new DefaultUserStore(DuplicateIdPolicy.REPLACE),
+                new ConcurrentUserStore(DuplicateIdPolicy.REPLACE),
+                new CompactUserStore(DuplicateIdPolicy.REPLACE)
+        );
+    }
+
     static Stream<Arguments> getArgumentsForLoginTest() {
         return Stream.of(
                 Arguments.of("Ivan", "123", Optional.of(IVAN)),
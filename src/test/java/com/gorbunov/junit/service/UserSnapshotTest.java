@@ -0,0 +1,135 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dto.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UserSnapshotTest {
+
+    private static final User IVAN = User.of(1, "Ivan", "123");
+    private static final User PETR = User.of(2, "Petr", "111");
+    private static final User IVAN_TWIN = User.of(3, "Ivan", "321");
+    private static final User ANNA = User.of(4, "Анна", "пароль");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoredServiceServesSameUsers() throws IOException {
+        Path snapshot = directory.resolve("users.snapshot");
+        UserService original = new UserService(null);
+        original.add(IVAN, PETR, IVAN_TWIN, ANNA);
+        original.saveSnapshot(snapshot);
+
+        UserService restored = UserService.fromSnapshot(null, snapshot);
+
+        assertThat(restored.getAll()).containsExactly(IVAN, PETR, IVAN_TWIN, ANNA);
+        assertThat(restored.getAllConvertedById()).isEqualTo(original.getAllConvertedById());
+        assertThat(restored.login("Ivan", "123")).contains(IVAN);
+        assertThat(restored.login("Ivan", "321")).contains(IVAN_TWIN);
+        assertThat(restored.login("Анна", "пароль")).contains(ANNA);
+        assertThat(restored.login("Petr", "123")).isEmpty();
+        assertThat(restored.findById(2)).contains(PETR);
+        assertThat(restored.findById(42)).isEmpty();
+    }
+
+    @Test
+    void usersAddedAfterOpenAreServedOnTopOfSnapshot() throws IOException {
+        Path snapshot = directory.resolve("users.snapshot");
+        new UserService(null).saveSnapshot(snapshot);
+        UserService service = new UserService(null);
+        service.add(IntStream.range(0, 10_000).mapToObj(id -> User.of(id, "user" + id, "password" + id)).toArray(User[]::new));
+        service.saveSnapshot(snapshot);
+
+        UserService restored = UserService.fromSnapshot(null, snapshot);
+        User renamed = User.of(5, "renamed", "secret");
+        User added = User.of(10_000, "new", "new");
+        restored.add(renamed, added);
+
+        assertThat(restored.getAll()).hasSize(10_001);
+        assertThat(restored.getAll().get(5)).isEqualTo(renamed);
+        assertThat(restored.login("user5", "password5")).isEmpty();
+        assertThat(restored.login("renamed", "secret")).contains(renamed);
+        assertThat(restored.login("new", "new")).contains(added);
+        assertThat(restored.findById(9_999)).contains(User.of(9_999, "user9999", "password9999"));
+        assertThat(restored.getAllConvertedById()).hasSize(10_001).containsEntry(5, renamed);
+    }
+
+    @Test
+    void usernameSearchMergesSnapshotWithAddedUsers() throws IOException {
+        Path snapshot = directory.resolve("users.snapshot");
+        UserService original = new UserService(null);
+        original.add(PETR, IVAN, IVAN_TWIN, ANNA);
+        original.saveSnapshot(snapshot);
+
+        UserService restored = UserService.fromSnapshot(null, snapshot);
+        User ivanov = User.of(5, "Ivanov", "1");
+        User renamed = User.of(PETR.getId(), "Iv", "111");
+        restored.add(ivanov, renamed);
+
+        assertThat(restored.findByUsernamePrefix("Iv", 10)).containsExactly(renamed, IVAN, IVAN_TWIN, ivanov);
+        assertThat(restored.findByUsernamePrefix("Petr", 10)).isEmpty();
+        assertThat(restored.listUsers(null, 2)).containsExactly(renamed);
+        assertThat(restored.listUsers("Iv", 2)).containsExactly(IVAN, IVAN_TWIN);
+        assertThat(restored.listUsers("Ivan", 2)).containsExactly(ivanov, ANNA);
+    }
+
+    @Test
+    void corruptedSnapshotIsRejected() throws IOException {
+        Path snapshot = directory.resolve("users.snapshot");
+        UserService service = new UserService(null);
+        service.add(IVAN, PETR);
+        service.saveSnapshot(snapshot);
+
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            file.write('x');
+        }
+
+        IOException exception = assertThrows(IOException.class, () -> UserService.fromSnapshot(null, snapshot));
+        assertThat(exception.getMessage()).contains("checksum");
+        assertThat(MappedUserStore.open(snapshot, DuplicateIdPolicy.REPLACE, false).getAll()).hasSize(2);
+    }
+
+    @Test
+    void corruptedHeaderIsRejected() throws IOException {
+        Path snapshot = directory.resolve("users.snapshot");
+        UserService service = new UserService(null);
+        service.add(IVAN, PETR);
+        service.saveSnapshot(snapshot);
+
+        // Неиспользуемый хвост заголовка тоже под контрольной суммой
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            file.seek(UserSnapshot.HEADER_SIZE - 1);
+            file.write(1);
+        }
+        assertThat(assertThrows(IOException.class, () -> MappedUserStore.open(snapshot)).getMessage()).contains("checksum");
+
+        // Таблица размером не в степень двойки или без свободных ячеек отклоняется и без проверки контрольной суммы
+        for (int tableSize : new int[]{3, 2, -4}) {
+            try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+                file.seek(UserSnapshot.ID_TABLE_SIZE_POSITION);
+                file.writeInt(tableSize);
+            }
+            IOException exception = assertThrows(IOException.class,
+                    () -> MappedUserStore.open(snapshot, DuplicateIdPolicy.REPLACE, false));
+            assertThat(exception.getMessage()).contains("header");
+        }
+
+        // Смещение за пределами файла
+        service.saveSnapshot(snapshot);
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            file.seek(UserSnapshot.STRINGS_OFFSET_POSITION);
+            file.writeInt(Integer.MAX_VALUE);
+        }
+        assertThrows(IOException.class, () -> MappedUserStore.open(snapshot, DuplicateIdPolicy.REPLACE, false));
+    }
+}
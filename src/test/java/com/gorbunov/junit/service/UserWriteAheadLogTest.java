@@ -0,0 +1,197 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dao.UserDao;
+import com.gorbunov.junit.dto.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UserWriteAheadLogTest {
+
+    private static final User IVAN = User.of(1, "Ivan", "123");
+    private static final User PETR = User.of(2, "Petr", "111");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void mutationsSurviveRestart() throws IOException {
+        Path file = directory.resolve("users.wal");
+        UserDao userDao = Mockito.mock(UserDao.class);
+
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file)) {
+            UserService userService = new UserService(userDao);
+            userService.enableWriteAheadLog(writeAheadLog);
+            userService.add(IVAN, PETR);
+            userService.delete(PETR.getId());
+            userService.deleteAll(List.of(3, 4));
+        }
+
+        UserDao restartedDao = Mockito.mock(UserDao.class);
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file)) {
+            UserService restarted = new UserService(restartedDao);
+            restarted.enableWriteAheadLog(writeAheadLog);
+
+            assertThat(restarted.getAll()).containsExactly(IVAN, PETR);
+            assertThat(restarted.login("Ivan", "123")).contains(IVAN);
+        }
+        Mockito.verify(restartedDao).deleteAll(new LinkedHashSet<>(List.of(PETR.getId(), 3, 4)));
+    }
+
+    @Test
+    void concurrentAppendsShareFsync() throws Exception {
+        Path file = directory.resolve("users.wal");
+        int threads = 8;
+        int usersPerThread = 500;
+        WriteAheadLogSettings settings = WriteAheadLogSettings.builder()
+                .groupCommitInterval(Duration.ofMillis(5))
+                .build();
+
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file, settings)) {
+            UserService userService = new UserService(null, new ConcurrentUserStore());
+            userService.enableWriteAheadLog(writeAheadLog);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int firstId = thread * usersPerThread;
+                futures.add(executor.submit(() -> {
+                    for (int id = firstId; id < firstId + usersPerThread; id++) {
+                        userService.add(User.of(id, "user" + id, "password" + id));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+
+            assertThat(writeAheadLog.getSyncCount()).isLessThan(threads * usersPerThread);
+        }
+
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file)) {
+            UserService restarted = new UserService(null);
+            restarted.enableWriteAheadLog(writeAheadLog);
+            assertThat(restarted.getAll()).hasSize(threads * usersPerThread);
+        }
+    }
+
+    @Test
+    void tornTailIsDiscarded() throws IOException {
+        Path file = directory.resolve("users.wal");
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file)) {
+            writeAheadLog.appendAdd(IVAN);
+            writeAheadLog.appendAdd(PETR);
+        }
+        long length = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(length - 3);
+        }
+
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file)) {
+            UserService restarted = new UserService(null);
+            restarted.enableWriteAheadLog(writeAheadLog);
+            restarted.add(User.of(3, "Vlad", "123"));
+            assertThat(restarted.getAll()).containsExactly(IVAN, User.of(3, "Vlad", "123"));
+        }
+
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file)) {
+            UserService restarted = new UserService(null);
+            restarted.enableWriteAheadLog(writeAheadLog);
+            assertThat(restarted.getAll()).containsExactly(IVAN, User.of(3, "Vlad", "123"));
+        }
+    }
+
+    @Test
+    void checkpointTruncatesLogAndRestartReplaysOnlyLaterChanges() throws IOException {
+        Path file = directory.resolve("users.wal");
+        Path snapshot = directory.resolve("users.snapshot");
+        User vlad = User.of(3, "Vlad", "123");
+
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file)) {
+            UserService userService = new UserService(Mockito.mock(UserDao.class));
+            userService.enableWriteAheadLog(writeAheadLog);
+            userService.add(IVAN, PETR);
+            userService.delete(42);
+            userService.checkpoint(snapshot);
+            assertThat(Files.size(file)).isZero();
+
+            userService.add(vlad);
+        }
+
+        UserDao restartedDao = Mockito.mock(UserDao.class);
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file)) {
+            UserService restarted = UserService.fromSnapshot(restartedDao, snapshot);
+            restarted.enableWriteAheadLog(writeAheadLog);
+
+            assertThat(restarted.getAll()).containsExactly(IVAN, PETR, vlad);
+        }
+        // удаление до checkpoint уже выполнено и повторно не отправляется
+        Mockito.verifyNoInteractions(restartedDao);
+    }
+
+    @Test
+    void singleWriterDoesNotWaitForGroupCommitInterval() throws IOException {
+        WriteAheadLogSettings settings = WriteAheadLogSettings.builder()
+                .groupCommitInterval(Duration.ofSeconds(10))
+                .build();
+
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(directory.resolve("users.wal"), settings)) {
+            long start = System.nanoTime();
+            writeAheadLog.appendAdd(IVAN);
+            writeAheadLog.appendDelete(PETR.getId());
+
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+            assertThat(writeAheadLog.getSyncCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void replayCountsAddsRejectedByStore() throws IOException {
+        Path file = directory.resolve("users.wal");
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file)) {
+            writeAheadLog.appendAdd(IVAN, PETR);
+        }
+
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file)) {
+            DefaultUserStore userStore = new DefaultUserStore(DuplicateIdPolicy.REJECT);
+            userStore.add(IVAN);
+            UserService restarted = new UserService(null, userStore);
+
+            assertThat(restarted.enableWriteAheadLog(writeAheadLog)).isEqualTo(1);
+            assertThat(restarted.getAll()).containsExactly(IVAN, PETR);
+        }
+    }
+
+    @Test
+    void rejectedAddIsNotJournaled() throws IOException {
+        Path file = directory.resolve("users.wal");
+        User duplicate = User.of(IVAN.getId(), "Vlad", "123");
+
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file)) {
+            UserService userService = new UserService(null, new DefaultUserStore(DuplicateIdPolicy.REJECT));
+            userService.enableWriteAheadLog(writeAheadLog);
+            assertThrows(IllegalStateException.class, () -> userService.add(IVAN, duplicate, PETR));
+        }
+
+        List<User> replayed = new ArrayList<>();
+        try (UserWriteAheadLog writeAheadLog = UserWriteAheadLog.open(file)) {
+            writeAheadLog.replay(replayed::add, id -> {
+            });
+        }
+        assertThat(replayed).containsExactly(IVAN);
+    }
+}
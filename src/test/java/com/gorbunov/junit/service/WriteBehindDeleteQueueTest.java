@@ -0,0 +1,143 @@
+package com.gorbunov.junit.service;
+
+import com.gorbunov.junit.dao.UserDao;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WriteBehindDeleteQueueTest {
+
+    @Test
+    void duplicateDeletesAreCoalesced() {
+        UserDao userDao = Mockito.mock(UserDao.class);
+        UserService userService = new UserService(userDao);
+        WriteBehindDeleteQueue deleteQueue = userService.enableWriteBehind(WriteBehindSettings.builder()
+                .batchSize(1_000)
+                .flushInterval(Duration.ofMinutes(1))
+                .build());
+
+        for (int round = 0; round < 10; round++) {
+            for (int id = 0; id < 120; id++) {
+                assertThat(userService.delete(id)).isTrue();
+            }
+        }
+        assertThat(deleteQueue.getQueueDepth()).isEqualTo(120);
+        deleteQueue.close();
+
+        Mockito.verify(userDao).deleteAll(IntStream.range(0, 120).boxed().collect(Collectors.toList()), 1_000);
+        Mockito.verify(userDao, Mockito.never()).delete(Mockito.anyInt());
+        assertThat(deleteQueue.getQueueDepth()).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void fullQueueIsFlushedInBatches() {
+        UserDao userDao = Mockito.mock(UserDao.class);
+        UserService userService = new UserService(userDao);
+        List<Integer> flushedBatchSizes = new CopyOnWriteArrayList<>();
+        WriteBehindDeleteQueue deleteQueue = userService.enableWriteBehind(WriteBehindSettings.builder()
+                .batchSize(50)
+                .flushInterval(Duration.ofMinutes(1))
+                .listener((batchSize, queueDepth) -> flushedBatchSizes.add(batchSize))
+                .build());
+
+        for (int id = 0; id < 120; id++) {
+            userService.delete(id);
+        }
+        Mockito.verify(userDao, Mockito.timeout(1_000).atLeast(2)).deleteAll(Mockito.anyCollection(), Mockito.eq(50));
+        deleteQueue.close();
+
+        ArgumentCaptor<Collection<Integer>> batches = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(userDao, Mockito.atLeast(3)).deleteAll(batches.capture(), Mockito.eq(50));
+        List<Integer> deleted = batches.getAllValues().stream().flatMap(Collection::stream).collect(Collectors.toList());
+        assertThat(deleted).containsExactlyInAnyOrderElementsOf(IntStream.range(0, 120).boxed().collect(Collectors.toList()));
+        assertThat(flushedBatchSizes).hasSameSizeAs(batches.getAllValues()).allMatch(size -> size <= 50);
+    }
+
+    @Test
+    void queueIsFlushedByTimer() throws InterruptedException {
+        UserDao userDao = Mockito.mock(UserDao.class);
+        UserService userService = new UserService(userDao);
+        try (WriteBehindDeleteQueue deleteQueue = userService.enableWriteBehind(WriteBehindSettings.builder()
+                .batchSize(1_000)
+                .flushInterval(Duration.ofMillis(20))
+                .build())) {
+            userService.delete(1);
+            userService.delete(2);
+            userService.delete(1);
+
+            Mockito.verify(userDao, Mockito.timeout(1_000)).deleteAll(List.of(1, 2), 1_000);
+            assertThat(deleteQueue.getQueueDepth()).isZero();
+        }
+    }
+
+    @Test
+    void failedBatchIsRequeued() {
+        UserDao userDao = Mockito.mock(UserDao.class);
+        Mockito.when(userDao.deleteAll(Mockito.anyCollection(), Mockito.anyInt()))
+                .thenThrow(new IllegalStateException("database is down"))
+                .thenReturn(null);
+        WriteBehindDeleteQueue deleteQueue = new WriteBehindDeleteQueue(userDao, WriteBehindSettings.builder()
+                .flushInterval(Duration.ofMinutes(1))
+                .build());
+        deleteQueue.enqueue(1);
+
+        assertThrows(IllegalStateException.class, deleteQueue::flush);
+        assertThat(deleteQueue.getQueueDepth()).isEqualTo(1);
+        deleteQueue.close();
+        assertThat(deleteQueue.getQueueDepth()).isZero();
+    }
+
+    @Test
+    void closeRetriesAndReportsIdsItCouldNotDelete() {
+        UserDao userDao = Mockito.mock(UserDao.class);
+        Mockito.when(userDao.deleteAll(Mockito.anyCollection(), Mockito.anyInt()))
+                .thenThrow(new IllegalStateException("database is down"));
+        WriteBehindDeleteQueue deleteQueue = new WriteBehindDeleteQueue(userDao, WriteBehindSettings.builder()
+                .flushInterval(Duration.ofMinutes(1))
+                .closeFlushAttempts(2)
+                .closeRetryDelay(Duration.ZERO)
+                .build());
+        deleteQueue.enqueue(1);
+        deleteQueue.enqueue(2);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class, deleteQueue::close);
+
+        assertThat(exception).hasMessageContaining("[1, 2]").hasRootCauseMessage("database is down");
+        assertThat(deleteQueue.getPendingIds()).containsExactly(1, 2);
+        Mockito.verify(userDao, Mockito.times(2)).deleteAll(List.of(1, 2), 500);
+    }
+
+    @Test
+    void deleteGoesToDaoAfterQueueIsClosedOrReplaced() {
+        UserDao userDao = Mockito.mock(UserDao.class);
+        Mockito.doReturn(true).when(userDao).delete(Mockito.anyInt());
+        UserService userService = new UserService(userDao);
+        WriteBehindSettings settings = WriteBehindSettings.builder()
+                .batchSize(1_000)
+                .flushInterval(Duration.ofMinutes(1))
+                .build();
+        WriteBehindDeleteQueue first = userService.enableWriteBehind(settings);
+        userService.delete(1);
+
+        // новая очередь закрывает старую, и накопленный id не теряется
+        WriteBehindDeleteQueue second = userService.enableWriteBehind(settings);
+        Mockito.verify(userDao).deleteAll(List.of(1), 1_000);
+        assertThrows(IllegalStateException.class, () -> first.enqueue(2));
+
+        second.close();
+        assertThat(userService.delete(3)).isTrue();
+        Mockito.verify(userDao).delete(3);
+        assertThat(second.getQueueDepth()).isZero();
+    }
+}
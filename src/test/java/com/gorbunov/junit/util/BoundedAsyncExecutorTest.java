@@ -0,0 +1,49 @@
+package com.gorbunov.junit.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BoundedAsyncExecutorTest {
+
+    @Test
+    void rejectsTasksOverInFlightLimit() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (BoundedAsyncExecutor executor = new BoundedAsyncExecutor(BoundedAsyncExecutorSettings.builder()
+                .maxInFlight(2)
+                .build())) {
+            CompletableFuture<Boolean> first = executor.submit(() -> release.await(1, TimeUnit.SECONDS));
+            CompletableFuture<Boolean> second = executor.submit(() -> release.await(1, TimeUnit.SECONDS));
+            CompletableFuture<Boolean> third = executor.submit(() -> release.await(1, TimeUnit.SECONDS));
+
+            // место не освободится, пока не отпустим release, так что submit не должен его ждать
+            assertThat(third).isCompletedExceptionally();
+            ExecutionException rejected = assertThrows(ExecutionException.class, third::get);
+            assertThat(rejected).hasCauseInstanceOf(RejectedExecutionException.class);
+            assertThat(executor.getInFlight()).isEqualTo(2);
+
+            release.countDown();
+            assertThat(first.get(1, TimeUnit.SECONDS)).isTrue();
+            assertThat(second.get(1, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    @Test
+    void slowTaskTimesOut() {
+        try (BoundedAsyncExecutor executor = new BoundedAsyncExecutor(BoundedAsyncExecutorSettings.builder()
+                .timeout(Duration.ofMillis(50))
+                .build())) {
+            CompletableFuture<Object> slow = executor.submit(() -> {
+                Thread.sleep(1_000);
+                return null;
+            });
+
+            ExecutionException timedOut = assertThrows(ExecutionException.class, () -> slow.get(1, TimeUnit.SECONDS));
+            assertThat(timedOut).hasCauseInstanceOf(TimeoutException.class);
+        }
+    }
+}
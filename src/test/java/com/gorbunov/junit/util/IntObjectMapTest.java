@@ -0,0 +1,53 @@
+package com.gorbunov.junit.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntObjectMapTest {
+
+    @Test
+    void putGetAndRemove() {
+        IntObjectMap<String> map = new IntObjectMap<>();
+
+        assertThat(map.put(0, "zero")).isNull();
+        assertThat(map.put(-1, "minus one")).isNull();
+        assertThat(map.put(0, "ZERO")).isEqualTo("zero");
+
+        assertThat(map.size()).isEqualTo(2);
+        assertThat(map.get(0)).isEqualTo("ZERO");
+        assertThat(map.getOrDefault(42, "none")).isEqualTo("none");
+        assertThat(map.remove(-1)).isEqualTo("minus one");
+        assertThat(map.containsKey(-1)).isFalse();
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    // Сверяем с HashMap на случайных операциях, чтобы проверить рост таблицы и удаление со сдвигом цепочек
+    @Test
+    void behavesLikeHashMapUnderRandomOperations() {
+        IntObjectMap<Integer> map = new IntObjectMap<>(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(5_000) - 2_500;
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            } else {
+                assertThat(map.put(key, i)).isEqualTo(expected.put(key, i));
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        Map<Integer, Integer> actual = new HashMap<>();
+        IntObjectMap.Cursor<Integer> cursor = map.cursor();
+        while (cursor.advance()) {
+            actual.put(cursor.key(), cursor.value());
+        }
+        assertThat(actual).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,57 @@
+package com.gorbunov.junit.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PersistentVectorTest {
+
+    // 40_000 элементов - это три уровня дерева, так что проверяется и рост корня
+    @Test
+    void behavesLikeArrayListAndKeepsOldVersions() {
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(42);
+        PersistentVector<Integer> half = null;
+        List<Integer> halfExpected = null;
+
+        for (int i = 0; i < 40_000; i++) {
+            vector = vector.plus(i);
+            expected.add(i);
+            if (random.nextInt(4) == 0) {
+                int index = random.nextInt(expected.size());
+                vector = vector.with(index, -i);
+                expected.set(index, -i);
+            }
+            if (i == 19_999) {
+                half = vector;
+                halfExpected = new ArrayList<>(expected);
+            }
+        }
+        // изменения после снятия версии не должны в нее попасть
+        for (int i = 0; i < 20_000; i++) {
+            vector = vector.with(i, i);
+        }
+
+        assertThat(half).containsExactlyElementsOf(halfExpected);
+        assertThat(vector).hasSize(40_000);
+        assertThat(vector.subList(0, 20_000)).containsExactlyElementsOf(IntStream.range(0, 20_000).boxed().collect(Collectors.toList()));
+        assertThat(vector.subList(20_000, 40_000)).containsExactlyElementsOf(expected.subList(20_000, 40_000));
+    }
+
+    @Test
+    void isImmutable() {
+        PersistentVector<String> vector = PersistentVector.<String>empty().plus("a");
+
+        assertThrows(UnsupportedOperationException.class, () -> vector.add("b"));
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.get(1));
+        assertThat(PersistentVector.empty()).isEmpty();
+    }
+}